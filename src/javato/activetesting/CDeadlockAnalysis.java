@@ -71,8 +71,7 @@ public class CDeadlockAnalysis extends AnalysisImpl {
         synchronized (ActiveChecker.lock) {
             lsTracker = new LockSetTracker();
             ignoreRentrantLock = new IgnoreRentrantLock();
-            DeadlockCycleInfo cycles = DeadlockCycleInfo.read();
-            deadlockingCycle = cycles.getCycles().get(Parameters.errorId - 1);
+            deadlockingCycle = DeadlockCycleInfo.readCycle(Parameters.errorId);
             System.out.println("cycle " + deadlockingCycle);
         }
     }
@@ -105,6 +104,7 @@ public class CDeadlockAnalysis extends AnalysisImpl {
                     if (matchesCycle(piids.fst,piids.snd)) {
                         this.isDeadlock = true;
 						finish();
+						ActiveChecker.flushSchedule();
 						Runtime.getRuntime().halt(1);
                     }
                 }
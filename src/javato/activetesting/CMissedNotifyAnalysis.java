@@ -14,7 +14,6 @@ import javato.activetesting.lockset.LockSetTracker;
 import javato.activetesting.reentrant.IgnoreRentrantLock;
 import javato.activetesting.igoodlock.Pair;
 
-import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.TreeMap;
 import java.io.PrintWriter;
@@ -60,8 +59,7 @@ public class CMissedNotifyAnalysis extends AnalysisImpl {
 
     public void initialize() {
         if (Parameters.errorId >= 0) {
-            LinkedHashSet<CommutativePair> seenRaces = HybridRaceTracker.getRacesFromFile();
-            racePair = (CommutativePair) (seenRaces.toArray())[Parameters.errorId - 1];
+            racePair = HybridRaceTracker.getRaceFromFile(Parameters.errorId);
             racePair.printcryptic(System.out);
         }
     }
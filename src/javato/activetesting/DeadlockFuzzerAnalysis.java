@@ -2,13 +2,20 @@ package javato.activetesting;
 
 import javato.activetesting.activechecker.ActiveChecker;
 import javato.activetesting.analysis.CheckerAnalysisImpl;
+import javato.activetesting.common.ConfirmedTargets;
 import javato.activetesting.common.Parameters;
 import javato.activetesting.igoodlock.DeadlockCycleInfo;
 import javato.activetesting.igoodlock.Node;
+import javato.activetesting.lockset.LockContext;
+import javato.activetesting.lockset.LockContextIndex;
 import javato.activetesting.lockset.LockSetTracker;
 import javato.activetesting.reentrant.IgnoreRentrantLock;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Copyright (c) 2007-2008,
@@ -45,51 +52,144 @@ import java.util.List;
 public class DeadlockFuzzerAnalysis extends CheckerAnalysisImpl {
     private LockSetTracker lsTracker;
     private IgnoreRentrantLock ignoreRentrantLock;
-    private List<Node> deadlockingCycle;
+    // the targeted cycles and their error ids; a single cycle unless
+    // javato.activetesting.errorids is set
+    private List<List<Node>> deadlockingCycles;
+    private List<Integer> cycleIds;
+    // context of a thread in a cycle -> entry of contextCycles, the indices
+    // of the cycles having a thread at that context
+    private LockContextIndex contextIndex = new LockContextIndex();
+    private List<int[]> contextCycles = new ArrayList<int[]>();
+    // iid of the outermost lock of a context -> indices of the cycles
+    private Map<Integer, int[]> outermostIidToCycles = new HashMap<Integer, int[]>();
+    // thread -> its current acquisition context
+    private Map<Integer, LockContext> contexts = new HashMap<Integer, LockContext>();
+    // the cycle the currently paused threads were paused for, -1 if none
+    private int activeCycle = -1;
 
     public void initialize() {
         synchronized (ActiveChecker.lock) {
             lsTracker = new LockSetTracker();
             ignoreRentrantLock = new IgnoreRentrantLock();
-            DeadlockCycleInfo cycles = DeadlockCycleInfo.read();
-            deadlockingCycle = cycles.getCycles().get(Parameters.errorId - 1);
-            System.out.println("cycle " + deadlockingCycle);
+            deadlockingCycles = new ArrayList<List<Node>>();
+            cycleIds = new ArrayList<Integer>();
+            if (Parameters.errorIds == null) {
+                addCycle(Parameters.errorId);
+            } else {
+                for (Integer id : ConfirmedTargets.pending(Parameters.errorIds, Parameters.ERROR_STAT_FILE, ConfirmedTargets.DEADLOCK)) {
+                    addCycle(id);
+                }
+                System.out.println("targeting " + cycleIds.size() + " cycles " + cycleIds);
+            }
         }
     }
 
-    private boolean needToPause(List<Integer> lockSet) {
-        for (Node node : deadlockingCycle) {
-            List<Integer> tupleLs = node.getContext();
-            if (lockSet.equals(tupleLs)) {
-                return true;
+    private void addCycle(int errorId) {
+        List<Node> cycle = DeadlockCycleInfo.readCycle(errorId);
+        System.out.println("cycle " + cycle);
+        if (cycle == null) return;
+        int index = deadlockingCycles.size();
+        deadlockingCycles.add(cycle);
+        cycleIds.add(errorId);
+        for (Node node : cycle) {
+            List<Integer> context = node.getContext();
+            int entry = contextIndex.putIfAbsent(context, contextCycles.size());
+            if (entry == contextCycles.size()) {
+                contextCycles.add(new int[0]);
             }
+            contextCycles.set(entry, with(contextCycles.get(entry), index));
+            Integer outermost = context.get(0);
+            int[] cycles = outermostIidToCycles.get(outermost);
+            outermostIidToCycles.put(outermost, with(cycles == null ? new int[0] : cycles, index));
         }
-        return false;
     }
 
-    private boolean needToYieldOthers(List<Integer> lockSet) {
-        for (Node node : deadlockingCycle) {
-            List<Integer> tupleLs = node.getContext();
-            if (lockSet.size() == 1 && lockSet.get(0).equals(tupleLs.get(0))) {
-                return true;
-            }
+    private static int[] with(int[] cycles, int cycle) {
+        if (contains(cycles, cycle)) return cycles;
+        int[] ret = Arrays.copyOf(cycles, cycles.length + 1);
+        ret[cycles.length] = cycle;
+        return ret;
+    }
+
+    private static boolean contains(int[] cycles, int cycle) {
+        for (int c : cycles) {
+            if (c == cycle) return true;
         }
         return false;
     }
 
+    private LockContext getContext(Integer thread) {
+        LockContext ctx = contexts.get(thread);
+        if (ctx == null) {
+            ctx = new LockContext();
+            contexts.put(thread, ctx);
+        }
+        return ctx;
+    }
+
+    /**
+     * returns true iff one of the matching cycles is the one the paused
+     * threads are waiting for, or no thread is paused; in the latter case the
+     * first matching cycle becomes the one to steer the next pauses toward
+     */
+    private boolean steer(int[] matching) {
+        if (activeCycle != -1 && ActiveChecker.getBlockedThreadCount() == 0) {
+            activeCycle = -1;
+        }
+        if (activeCycle == -1) {
+            activeCycle = matching[0];
+            return true;
+        }
+        return contains(matching, activeCycle);
+    }
+
+    private boolean needToPause(LockContext ctx) {
+        int entry = contextIndex.get(ctx);
+        return entry != -1 && steer(contextCycles.get(entry));
+    }
+
+    private boolean needToYieldOthers(LockContext ctx, Integer iid) {
+        if (ctx.depth() != 1) return false;
+        int[] matching = outermostIidToCycles.get(iid);
+        return matching != null && (activeCycle == -1 || contains(matching, activeCycle));
+    }
+
+    /**
+     * records the error id of the cycle that was steered for when the real
+     * deadlock happened, or of the cycles the current context belongs to
+     */
+    private void writeStat(String file, LockContext ctx) {
+        int[] confirmed = new int[0];
+        if (activeCycle != -1) {
+            confirmed = new int[]{activeCycle};
+        } else if (contextIndex.get(ctx) != -1) {
+            confirmed = contextCycles.get(contextIndex.get(ctx));
+        }
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int cycle : confirmed) {
+            ids.add(cycleIds.get(cycle));
+        }
+        ConfirmedTargets.append(file, ConfirmedTargets.DEADLOCK, ids);
+    }
+
 
     public void lockBefore(Integer iid, Integer thread, Integer lock, Object actualLock) {
         synchronized (ActiveChecker.lock) {
             if (ignoreRentrantLock.lockBefore(thread, lock)) {
                 boolean isDeadlock = lsTracker.lockBefore(iid, thread, lock);
+                LockContext ctx = getContext(thread);
+                ctx.push(iid);
                 if (isDeadlock) {
+                    if (Parameters.errorIds != null) {
+                        writeStat(Parameters.ERROR_STAT_FILE, ctx);
+                    }
+                    ActiveChecker.flushSchedule();
                     Runtime.getRuntime().halt(1);
                 } else {
-                    List<Integer> lockSet = lsTracker.getLockSetIids(thread);
-                    if (needToYieldOthers(lockSet)) {
-                        (new ActiveChecker()).check(30);
-                    } else if (needToPause(lockSet)) {
-                        (new ActiveChecker()).check();
+                    if (needToYieldOthers(ctx, iid)) {
+                        (new ActiveChecker(iid)).check(30);
+                    } else if (needToPause(ctx)) {
+                        (new ActiveChecker(iid)).check();
                     }
                 }
             }
@@ -101,6 +201,7 @@ public class DeadlockFuzzerAnalysis extends CheckerAnalysisImpl {
         synchronized (ActiveChecker.lock) {
             if (ignoreRentrantLock.unlockAfter(thread, lock)) {
                 lsTracker.unlockAfter(thread);
+                getContext(thread).pop();
             }
         }
     }
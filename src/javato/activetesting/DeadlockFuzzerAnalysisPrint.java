@@ -58,8 +58,7 @@ public class DeadlockFuzzerAnalysisPrint extends CheckerAnalysisImpl {
         synchronized (ActiveChecker.lock) {
             lsTracker = new LockSetTracker();
             ignoreRentrantLock = new IgnoreRentrantLock();
-            DeadlockCycleInfo cycles = DeadlockCycleInfo.read();
-            deadlockingCycle = cycles.getCycles().get(Parameters.errorId - 1);
+            deadlockingCycle = DeadlockCycleInfo.readCycle(Parameters.errorId);
             numEvents = 0;
             threadSet = new HashSet<Integer>();
             System.out.println("cycle " + deadlockingCycle);
@@ -94,13 +93,14 @@ public class DeadlockFuzzerAnalysisPrint extends CheckerAnalysisImpl {
 
                 boolean isDeadlock = lsTracker.lockBefore(iid, thread, lock);
                 if (isDeadlock) {
+                    ActiveChecker.flushSchedule();
                     Runtime.getRuntime().halt(1);
                 } else {
                     List<Integer> lockSet = lsTracker.getLockSetIids(thread);
                     if (needToYieldOthers(lockSet)) {
-                        (new ActiveChecker()).check(30);
+                        (new ActiveChecker(iid)).check(30);
                     } else if (needToPause(lockSet)) {
-                        (new ActiveChecker()).check();
+                        (new ActiveChecker(iid)).check();
                     }
                 }
             }
@@ -59,8 +59,7 @@ public class DeadlockFuzzerAnalysisPrintWF extends CheckerAnalysisImpl {
         synchronized (ActiveChecker.lock) {
             lsTracker = new LockSetTracker();
             ignoreRentrantLock = new IgnoreRentrantLock();
-            DeadlockCycleInfo cycles = DeadlockCycleInfo.read();
-            deadlockingCycle = cycles.getCycles().get(Parameters.errorId - 1);
+            deadlockingCycle = DeadlockCycleInfo.readCycle(Parameters.errorId);
             numEvents = 0;
             threadSet = new HashSet<Integer>();
             lockRequestSet = new HashSet<Pair<Integer, Integer>>();
@@ -105,14 +104,15 @@ public class DeadlockFuzzerAnalysisPrintWF extends CheckerAnalysisImpl {
                 boolean isDeadlock = lsTracker.lockBefore(iid, thread, lock);
                 if (isDeadlock) {
                   System.out.println("System deadlock after events: " + numEvents);
+                   ActiveChecker.flushSchedule();
                    Runtime.getRuntime().halt(1);
                 } else {
                 //System.out.println("doing pause check");
                     List<Integer> lockSet = lsTracker.getLockSetIids(thread);
                     if (needToYieldOthers(lockSet)) {
-                        (new ActiveChecker()).check(30);
+                        (new ActiveChecker(iid)).check(30);
                     } else if (needToPause(lockSet)) {
-                        (new ActiveChecker()).check();
+                        (new ActiveChecker(iid)).check();
                     }
                 }
             }
@@ -150,6 +150,7 @@ public class DeadlockFuzzerAnalysisPrintWF extends CheckerAnalysisImpl {
                                 boolean isDeadlock = lsTracker.requestBefore(iid, thread, lock);
                                 if (isDeadlock) {
                                     System.out.println("System deadlocked in request!");
+                                    ActiveChecker.flushSchedule();
                                     Runtime.getRuntime().halt(1);
                                 }
                             }
@@ -171,6 +172,7 @@ public class DeadlockFuzzerAnalysisPrintWF extends CheckerAnalysisImpl {
                         boolean isDeadlock = lsTracker.requestBefore(iid, thread, lock);
                         if (isDeadlock) {
                             System.out.println("System deadlocked in request!");
+                            ActiveChecker.flushSchedule();
                             Runtime.getRuntime().halt(1);
                         }
                     }
@@ -6,6 +6,8 @@ import javato.activetesting.analysis.Observer;
 import javato.activetesting.igoodlock.GoodlockDS;
 import javato.activetesting.reentrant.IgnoreRentrantLock;
 import javato.activetesting.common.Parameters;
+import javato.activetesting.vc.VectorClock;
+import javato.activetesting.vc.VectorClockTracker;
 
 /**
  * Copyright (c) 2007-2008,
@@ -42,18 +44,31 @@ import javato.activetesting.common.Parameters;
 public class IGoodlockAnalysis extends AnalysisImpl {
     private GoodlockDS gl;
     private IgnoreRentrantLock ignoreRentrantLock;
+    // start and join edges only, used to drop cycles that cannot happen
+    private VectorClockTracker vcTracker;
 
     public void initialize() {
         synchronized (ActiveChecker.lock) {
             ignoreRentrantLock = new IgnoreRentrantLock();
+            vcTracker = new VectorClockTracker();
             gl = new GoodlockDS();
         }
     }
 
+    private VectorClock getVectorClock(Integer thread) {
+        VectorClock vc = vcTracker.getVectorClock(thread);
+        if (vc.getValue(thread) == 0) {
+            // a thread that was not started by an observed start() (e.g. main)
+            // must not look as if it were known by everybody
+            vc.inc(thread);
+        }
+        return vc;
+    }
+
     public void lockBefore(Integer iid, Integer thread, Integer lock, Object actualLock) {
         synchronized (ActiveChecker.lock) {
             if (ignoreRentrantLock.lockBefore(thread, lock)) {
-                gl.lock(iid, thread, lock);
+                gl.lock(iid, thread, lock, getVectorClock(thread));
             }
         }
     }
@@ -76,6 +91,10 @@ public class IGoodlockAnalysis extends AnalysisImpl {
     }
 
     public void startBefore(Integer iid, Integer parent, Integer child) {
+        synchronized (ActiveChecker.lock) {
+            getVectorClock(parent);
+            vcTracker.startBefore(parent, child);
+        }
     }
 
     public void waitAfter(Integer iid, Integer thread, Integer lock) {
@@ -88,6 +107,11 @@ public class IGoodlockAnalysis extends AnalysisImpl {
     }
 
     public void joinAfter(Integer iid, Integer parent, Integer child) {
+        synchronized (ActiveChecker.lock) {
+            getVectorClock(parent);
+            getVectorClock(child);
+            vcTracker.joinAfter(parent, child);
+        }
     }
 
     public void readBefore(Integer iid, Integer thread, Long memory, boolean isVolatile) {
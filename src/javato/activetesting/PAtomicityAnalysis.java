@@ -4,13 +4,10 @@ import javato.activetesting.activechecker.ActiveChecker;
 import javato.activetesting.analysis.AnalysisImpl;
 import javato.activetesting.hybridracedetection.HybridRaceTracker;
 import javato.activetesting.lockset.LockSet;
-import javato.activetesting.lockset.LockSetTracker;
-import javato.activetesting.reentrant.IgnoreRentrantLock;
-import javato.activetesting.vc.VectorClockTracker;
-import javato.activetesting.common.Parameters;
+import javato.activetesting.syncstate.SyncState;
+import javato.activetesting.syncstate.SyncStateTracker;
 
 import java.util.TreeSet;
-import java.util.TreeMap;
 
 /**
  * Copyright (c) 2007-2008,
@@ -47,65 +44,60 @@ import java.util.TreeMap;
 
 
 public class PAtomicityAnalysis extends AnalysisImpl {
-    private VectorClockTracker vcTracker;
-    private LockSetTracker lsTracker;
-    private IgnoreRentrantLock ignoreRentrantLock;
+    private SyncStateTracker syncStates;
     private HybridRaceTracker eb;
-    private TreeMap<Integer,ThreadInfo> atomicityInfo;
 
     public void initialize() {
         synchronized (ActiveChecker.lock) {
-            vcTracker = new VectorClockTracker();
-            lsTracker = new LockSetTracker();
-            ignoreRentrantLock = new IgnoreRentrantLock();
+            syncStates = new SyncStateTracker();
             eb = new HybridRaceTracker();
-            atomicityInfo = new TreeMap<Integer, ThreadInfo>();
         }
     }
 
-    private ThreadInfo getThreadInfo(Integer thread) {
-        ThreadInfo ti = atomicityInfo.get(thread);
+    private ThreadInfo getThreadInfo(SyncState s) {
+        ThreadInfo ti = (ThreadInfo) s.getAttachment();
         if (ti==null) {
             ti = new ThreadInfo();
-            atomicityInfo.put(thread,ti);
+            s.setAttachment(ti);
         }
         return ti;
     }
 
     public void lockBefore(Integer iid, Integer thread, Integer lock, Object actualLock) {
         synchronized (ActiveChecker.lock) {
-            if (ignoreRentrantLock.lockBefore(thread, lock)) {
-                ThreadInfo ti = getThreadInfo(thread);
-                LockSet ls = lsTracker.getLockSet(thread);
+            SyncState s = syncStates.get(thread);
+            if (!s.holds(lock)) {
+                ThreadInfo ti = getThreadInfo(s);
+                LockSet ls = s.getLockSet();
                 Long mem = (long) lock;
                 boolean isRead = !ti.isAcquiringAgain(lock);
-                eb.checkRace(iid, thread, mem , isRead, vcTracker.getVectorClock(thread), ls,true,false);
-                eb.addEvent(iid, thread, mem, isRead, vcTracker.getVectorClock(thread), ls);
-                lsTracker.lockBefore(iid, thread, lock);
+                eb.checkRace(iid, thread, mem , isRead, s.getVectorClock(), ls,true,false);
+                eb.addEvent(iid, thread, mem, isRead, s.getVectorClock(), ls);
             }
+            s.lockBefore(iid, lock);
         }
     }
 
 
     public void unlockAfter(Integer iid, Integer thread, Integer lock) {
         synchronized (ActiveChecker.lock) {
-            if (ignoreRentrantLock.unlockAfter(thread, lock)) {
-                lsTracker.unlockAfter(thread);
-                getThreadInfo(thread).lockRelease();
+            SyncState s = syncStates.get(thread);
+            if (s.unlockAfter(lock)) {
+                getThreadInfo(s).lockRelease();
             }
         }
     }
 
     public void startBefore(Integer iid, Integer parent, Integer child) {
         synchronized (ActiveChecker.lock) {
-            vcTracker.startBefore(parent, child);
+            syncStates.startBefore(parent, child);
         }
     }
 
 
     public void joinAfter(Integer iid, Integer parent, Integer child) {
         synchronized (ActiveChecker.lock) {
-            vcTracker.joinAfter(parent, child);
+            syncStates.joinAfter(parent, child);
         }
     }
 
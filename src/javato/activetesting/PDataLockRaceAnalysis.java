@@ -4,9 +4,8 @@ import javato.activetesting.activechecker.ActiveChecker;
 import javato.activetesting.analysis.AnalysisImpl;
 import javato.activetesting.hybridracedetection.HybridRaceTracker;
 import javato.activetesting.lockset.LockSet;
-import javato.activetesting.lockset.LockSetTracker;
-import javato.activetesting.reentrant.IgnoreRentrantLock;
-import javato.activetesting.vc.VectorClockTracker;
+import javato.activetesting.syncstate.SyncState;
+import javato.activetesting.syncstate.SyncStateTracker;
 import javato.activetesting.common.Parameters;
 
 /**
@@ -42,52 +41,45 @@ import javato.activetesting.common.Parameters;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 public class PDataLockRaceAnalysis extends AnalysisImpl {
-    private VectorClockTracker vcTracker;
-    private LockSetTracker lsTracker;
-    private IgnoreRentrantLock ignoreRentrantLock;
+    private SyncStateTracker syncStates;
     private HybridRaceTracker eb;
 
     public void initialize() {
         synchronized (ActiveChecker.lock) {
-            vcTracker = new VectorClockTracker();
-            lsTracker = new LockSetTracker();
-            ignoreRentrantLock = new IgnoreRentrantLock();
+            syncStates = new SyncStateTracker();
             eb = new HybridRaceTracker();
         }
     }
 
     public void lockBefore(Integer iid, Integer thread, Integer lock, Object actualLock) {
         synchronized (ActiveChecker.lock) {
-            if (ignoreRentrantLock.lockBefore(thread, lock)) {
-                if (Parameters.trackLockRaces) {
-                    LockSet ls = lsTracker.getLockSet(thread);
-                    Long mem = (long) lock;
-                    eb.checkRace(iid, thread, mem , false, vcTracker.getVectorClock(thread), ls,true,false);
-                    eb.addEvent(iid, thread, mem, false, vcTracker.getVectorClock(thread), ls);
-                }
-                boolean isDeadlock = lsTracker.lockBefore(iid, thread, lock);
+            SyncState s = syncStates.get(thread);
+            if (Parameters.trackLockRaces && !s.holds(lock)) {
+                LockSet ls = s.getLockSet();
+                Long mem = (long) lock;
+                eb.checkRace(iid, thread, mem , false, s.getVectorClock(), ls,true,false);
+                eb.addEvent(iid, thread, mem, false, s.getVectorClock(), ls);
             }
+            s.lockBefore(iid, lock);
         }
     }
 
     public void unlockAfter(Integer iid, Integer thread, Integer lock) {
         synchronized (ActiveChecker.lock) {
-            if (ignoreRentrantLock.unlockAfter(thread, lock)) {
-                lsTracker.unlockAfter(thread);
-            }
+            syncStates.get(thread).unlockAfter(lock);
         }
     }
 
     public void startBefore(Integer iid, Integer parent, Integer child) {
         synchronized (ActiveChecker.lock) {
-            vcTracker.startBefore(parent, child);
+            syncStates.startBefore(parent, child);
         }
     }
 
     public void waitAfter(Integer iid, Integer thread, Integer lock) {
         if (!Parameters.trackLockRaces) {
             synchronized (ActiveChecker.lock) {
-                vcTracker.waitAfter(thread, lock);
+                syncStates.waitAfter(thread, lock);
             }
         }
     }
@@ -95,7 +87,7 @@ public class PDataLockRaceAnalysis extends AnalysisImpl {
     public void notifyBefore(Integer iid, Integer thread, Integer lock) {
         if (!Parameters.trackLockRaces) {
             synchronized (ActiveChecker.lock) {
-                vcTracker.notifyBefore(thread, lock);
+                syncStates.notifyBefore(thread, lock);
             }
         }
     }
@@ -103,30 +95,32 @@ public class PDataLockRaceAnalysis extends AnalysisImpl {
     public void notifyAllBefore(Integer iid, Integer thread, Integer lock) {
         if (!Parameters.trackLockRaces) {
             synchronized (ActiveChecker.lock) {
-                vcTracker.notifyBefore(thread, lock);
+                syncStates.notifyBefore(thread, lock);
             }
         }
     }
 
     public void joinAfter(Integer iid, Integer parent, Integer child) {
         synchronized (ActiveChecker.lock) {
-            vcTracker.joinAfter(parent, child);
+            syncStates.joinAfter(parent, child);
         }
     }
 
     public void readBefore(Integer iid, Integer thread, Long memory, boolean isVolatile) {
         synchronized (ActiveChecker.lock) {
-            LockSet ls = lsTracker.getLockSet(thread);
-            eb.checkRace(iid, thread, memory, true, vcTracker.getVectorClock(thread), ls, false,isVolatile);
-            eb.addEvent(iid, thread, memory, true, vcTracker.getVectorClock(thread), ls);
+            SyncState s = syncStates.get(thread);
+            LockSet ls = s.getLockSet();
+            eb.checkRace(iid, thread, memory, true, s.getVectorClock(), ls, false,isVolatile);
+            eb.addEvent(iid, thread, memory, true, s.getVectorClock(), ls);
         }
     }
 
     public void writeBefore(Integer iid, Integer thread, Long memory, boolean isVolatile) {
         synchronized (ActiveChecker.lock) {
-            LockSet ls = lsTracker.getLockSet(thread);
-            eb.checkRace(iid, thread, memory, false, vcTracker.getVectorClock(thread), ls, false,isVolatile);
-            eb.addEvent(iid, thread, memory, false, vcTracker.getVectorClock(thread), ls);
+            SyncState s = syncStates.get(thread);
+            LockSet ls = s.getLockSet();
+            eb.checkRace(iid, thread, memory, false, s.getVectorClock(), ls, false,isVolatile);
+            eb.addEvent(iid, thread, memory, false, s.getVectorClock(), ls);
         }
     }
 
@@ -5,6 +5,7 @@ import javato.activetesting.analysis.ObserverForActiveTesting;
 import javato.activetesting.analysis.DeterministicAnalysisImpl;
 import javato.activetesting.hybridracedetection.CommutativePair;
 import javato.activetesting.hybridracedetection.HybridRaceTracker;
+import javato.activetesting.common.ConfirmedTargets;
 import javato.activetesting.common.Parameters;
 import javato.activetesting.common.MutableLong;
 import javato.activetesting.activechecker.ActiveChecker;
@@ -14,7 +15,8 @@ import javato.activetesting.lockset.LockSetTracker;
 import javato.activetesting.reentrant.IgnoreRentrantLock;
 import javato.activetesting.igoodlock.Pair;
 
-import java.util.LinkedHashSet;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.io.PrintWriter;
@@ -66,6 +68,7 @@ public class PredictestAnalysis extends AnalysisImpl {
     private LockSetTracker lsTracker = new LockSetTracker();
     private IgnoreRentrantLock ignoreRentrantLock = new IgnoreRentrantLock();
     private boolean isDeadlock = false;
+    private int errorId = Parameters.errorId;
 
 
     private long incAndGetVisitCount(Integer iid) {
@@ -82,9 +85,19 @@ public class PredictestAnalysis extends AnalysisImpl {
     }
 
     public void initialize() {
-        if (Parameters.errorId >= 0) {
-            LinkedHashSet<CommutativePair> seenRaces = HybridRaceTracker.getRacesFromFile();
-            racePair = (CommutativePair) (seenRaces.toArray())[Parameters.errorId - 1];
+        if (Parameters.errorIds != null) {
+            // the two threads of a race are steered one against the other, so
+            // a run tests one of the targeted races not confirmed yet, taking
+            // turns so that a race that does not reproduce holds up no other
+            List<Integer> pending = ConfirmedTargets.pending(Parameters.errorIds, Parameters.ERROR_STAT_FILE, ConfirmedTargets.RACE);
+            errorId = ConfirmedTargets.leastTried(pending, Parameters.ERROR_STAT_FILE, ConfirmedTargets.RACE);
+            if (errorId >= 0) {
+                ConfirmedTargets.markTried(Parameters.ERROR_STAT_FILE, ConfirmedTargets.RACE, errorId);
+            }
+            System.out.println("targeting race " + errorId + ", " + pending.size() + " races left");
+        }
+        if (errorId >= 0) {
+            racePair = HybridRaceTracker.getRaceFromFile(errorId);
             racePair.printcryptic(System.out);
         }
     }
@@ -221,14 +234,18 @@ public class PredictestAnalysis extends AnalysisImpl {
     }
 
     public void finish() {
+        if (racePair == null) return;
         writeStat(Parameters.ERROR_STAT_FILE);
+        if (Parameters.errorIds != null && EqualObjectBreakpoint.isMatch) {
+            ConfirmedTargets.append(Parameters.ERROR_STAT_FILE, ConfirmedTargets.RACE, Collections.singletonList(errorId));
+        }
     }
 
     public void writeStat(String file) {
         try {
             PrintWriter pw = new PrintWriter(new FileWriter(file,true));
             racePair.println(pw);
-            pw.println(Parameters.errorId+":"
+            pw.println(errorId+":"
                     + (EqualObjectBreakpoint.isMatch?(isLock?"lock contention:":"data race:"):":")
                     + ((isDeadlock&& StallBreaker.isDeadlock)?"deadlock:":(StallBreaker.isStall?"stall:":":")));
             if (EqualObjectBreakpoint.isMatch) {
@@ -2,15 +2,20 @@ package javato.activetesting;
 
 import javato.activetesting.activechecker.ActiveChecker;
 import javato.activetesting.analysis.CheckerAnalysisImpl;
+import javato.activetesting.common.ConfirmedTargets;
 import javato.activetesting.common.Parameters;
 import javato.activetesting.hybridracedetection.CommutativePair;
 import javato.activetesting.hybridracedetection.HybridRaceTracker;
 import javato.activetesting.racefuzzer.RaceChecker;
 
-import java.util.LinkedHashSet;
 import java.io.PrintWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Copyright (c) 2007-2008,
@@ -46,23 +51,75 @@ import java.io.IOException;
  */
 public class RaceFuzzerAnalysis extends CheckerAnalysisImpl {
     private CommutativePair racePair;
+    // when javato.activetesting.errorids is set, the races targeted together,
+    // their error ids, whether they were confirmed, and for every iid of
+    // them the indices of the races it belongs to
+    private List<Integer> raceIds;
+    private boolean[] confirmed;
+    private Map<Integer, int[]> iidToTargets;
 
     public void initialize() {
-        if (Parameters.errorId >= 0) {
-            LinkedHashSet<CommutativePair> seenRaces = HybridRaceTracker.getRacesFromFile();
-            racePair = (CommutativePair) (seenRaces.toArray())[Parameters.errorId - 1];
+        if (Parameters.errorIds != null) {
+            List<Integer> ids = ConfirmedTargets.pending(Parameters.errorIds, Parameters.ERROR_STAT_FILE, ConfirmedTargets.RACE);
+            List<CommutativePair> pairs = HybridRaceTracker.getRacesFromFile(ids);
+            raceIds = new ArrayList<Integer>();
+            iidToTargets = new HashMap<Integer, int[]>();
+            for (int i = 0; i < pairs.size(); i++) {
+                CommutativePair pair = pairs.get(i);
+                if (pair == null) continue;
+                int target = raceIds.size();
+                raceIds.add(ids.get(i));
+                addTarget(pair.getX(), target);
+                if (!pair.getY().equals(pair.getX())) {
+                    addTarget(pair.getY(), target);
+                }
+            }
+            confirmed = new boolean[raceIds.size()];
+            System.out.println("targeting " + raceIds.size() + " races " + raceIds);
+        } else if (Parameters.errorId >= 0) {
+            racePair = HybridRaceTracker.getRaceFromFile(Parameters.errorId);
         }
         //System.out.println("IID pairs "+racePair);
     }
 
-    public void lockBefore(Integer iid, Integer thread, Integer lock, Object actualLock) {
-        if (Parameters.trackLockRaces) {
-            if (racePair != null && racePair.contains(iid)) {
+    private void addTarget(Integer iid, int target) {
+        int[] targets = iidToTargets.get(iid);
+        if (targets == null) {
+            targets = new int[0];
+        }
+        targets = Arrays.copyOf(targets, targets.length + 1);
+        targets[targets.length - 1] = target;
+        iidToTargets.put(iid, targets);
+    }
+
+    /**
+     * pauses or lets go of threads if iid belongs to a targeted race
+     */
+    private void check(Integer iid, Long memory, boolean isWrite, boolean isLock) {
+        if (iidToTargets != null) {
+            int[] targets = iidToTargets.get(iid);
+            if (targets != null) {
                 synchronized (ActiveChecker.lock) {
-                    (new RaceChecker((long)lock, true, iid, true)).check();
+                    int[] found = RaceChecker.check(memory, isWrite, iid, isLock, targets);
+                    if (found != null) {
+                        for (int target : found) {
+                            confirmed[target] = true;
+                        }
+                    }
                 }
                 ActiveChecker.blockIfRequired();
             }
+        } else if (racePair != null && racePair.contains(iid)) {
+            synchronized (ActiveChecker.lock) {
+                RaceChecker.check(memory, isWrite, iid, isLock);
+            }
+            ActiveChecker.blockIfRequired();
+        }
+    }
+
+    public void lockBefore(Integer iid, Integer thread, Integer lock, Object actualLock) {
+        if (Parameters.trackLockRaces) {
+            check(iid, (long) lock, true, true);
         }
     }
 
@@ -102,27 +159,28 @@ public class RaceFuzzerAnalysis extends CheckerAnalysisImpl {
     }
 
     public void readBefore(Integer iid, Integer thread, Long memory, boolean isVolatile) {
-        if (racePair != null && racePair.contains(iid)) {
-            //System.out.println("read ...");
-            synchronized (ActiveChecker.lock) {
-                (new RaceChecker(memory, false, iid, false)).check();
-            }
-            ActiveChecker.blockIfRequired();
-        }
+        check(iid, memory, false, false);
     }
 
     public void writeBefore(Integer iid, Integer thread, Long memory, boolean isVolatile) {
-        if (racePair != null && racePair.contains(iid)) {
-            //System.out.println("write ...");
-            synchronized (ActiveChecker.lock) {
-                (new RaceChecker(memory, true, iid, false)).check();
-            }
-            ActiveChecker.blockIfRequired();
-        }
+        check(iid, memory, true, false);
     }
 
     public void finish() {
-        writeStat(Parameters.ERROR_STAT_FILE);
+        if (raceIds != null) {
+            List<Integer> ids = new ArrayList<Integer>();
+            synchronized (ActiveChecker.lock) {
+                for (int target = 0; target < confirmed.length; target++) {
+                    if (confirmed[target]) {
+                        ids.add(raceIds.get(target));
+                    }
+                }
+            }
+            System.out.println("confirmed " + ids.size() + " of " + raceIds.size() + " races " + ids);
+            ConfirmedTargets.append(Parameters.ERROR_STAT_FILE, ConfirmedTargets.RACE, ids);
+        } else {
+            writeStat(Parameters.ERROR_STAT_FILE);
+        }
     }
 
     public static void writeStat(String file) {
@@ -5,20 +5,11 @@ import javato.activetesting.reentrant.IgnoreRentrantLock;
 import javato.activetesting.analysis.AnalysisImpl;
 import javato.activetesting.analysis.ObserverForActiveTesting;
 import javato.activetesting.common.Parameters;
-import javato.activetesting.common.MutableLong;
 import javato.activetesting.activechecker.ActiveChecker;
 import javato.activetesting.threadrepro.EqualObjectBreakpoint;
 import javato.activetesting.deterministicscheduler.StallBreaker;
-import javato.activetesting.syncpd.util.VectorClock;
-
-import java.util.Set;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
-import java.util.Map;
+
 import java.util.Scanner;
-import java.util.TreeMap;
 import java.io.PrintWriter;
 import java.io.File;
 import java.io.FileWriter;
@@ -27,7 +18,9 @@ import java.io.FileNotFoundException;
 import java.util.Scanner;
 import java.util.Random;
 
-import javato.activetesting.syncpd.SyncPDState;;
+import javato.activetesting.syncpd.LongMap;
+import javato.activetesting.syncpd.SyncPDChecker;
+import javato.activetesting.syncpd.SyncPDState;
 
 /**
  * Copyright (c) 2006-2009,
@@ -64,25 +57,40 @@ import javato.activetesting.syncpd.SyncPDState;;
 public class SPDOnline extends AnalysisImpl {
 
     private SyncPDState state;
+    private SyncPDChecker checker;
     private LockSetTracker lsTracker;
     private IgnoreRentrantLock ignoreRentrantLock;
     private int numAcqEvents;
-    private Set<Integer> pauseThreads;
-    private HashMap<Long, Integer> pauseCountPerLoc;
-    private HashMap<Integer, Integer> pauseCountPerThread;
+    private ThreadLocal<Writer> writers;
+    // capped at MAX_PAUSE, so the boxed counts are the cached Integers
+    private LongMap<Integer> pauseCountPerLoc;
     private int execNumber;
     private int sleepDuration;
     private Object writeLock;
     private final int MAX_PAUSE = 5;
 
+    /**
+     * Pause state of a thread, only touched by the thread itself.
+     */
+    private static class Writer {
+        final Random random = new Random();
+        // a lock has been acquired since the last pause decision
+        boolean acquired;
+        int pauseCount;
+    }
+
     public void initialize() {
         synchronized (ActiveChecker.lock) {
             state = new SyncPDState();
+            checker = new SyncPDChecker(state, Parameters.syncpdCycleLength, Parameters.syncpdBudget);
             lsTracker = new LockSetTracker();
             ignoreRentrantLock = new IgnoreRentrantLock();
-            pauseThreads = new HashSet<Integer>();
-            pauseCountPerLoc = new HashMap<Long, Integer>();
-            pauseCountPerThread = new HashMap<Integer, Integer>();
+            writers = new ThreadLocal<Writer>() {
+                protected Writer initialValue() {
+                    return new Writer();
+                }
+            };
+            pauseCountPerLoc = new LongMap<Integer>();
             writeLock = new Object();
             numAcqEvents = 0;
             try {
@@ -101,21 +109,12 @@ public class SPDOnline extends AnalysisImpl {
 
     public void lockBefore(Integer iid, Integer thread, Integer lock, Object actualLock) {
         synchronized (ActiveChecker.lock) {
-            state.addThread(thread);
-
-            int vertexIndex = state.keepCycleBooks(thread, lock, iid);
-            if (vertexIndex >= 0) {
-                boolean foundDeadlock = state.findDeadlocks(vertexIndex, thread, lock, iid);
-            }
-
-            state.incClockThread(thread);
-            state.addToLocksHeld(thread, lock);
-            state.addAcquireToHist(thread, lock, numAcqEvents);
+            checker.acquire(iid, thread, lock);
+            writers.get().acquired = true;
 
-            pauseThreads.add(thread);
             this.numAcqEvents++;
 
-            if (state.getLockHeldCount(thread, lock) == 1) {
+            if (ignoreRentrantLock.lockBefore(thread, lock)) {
                 boolean isDeadlock = lsTracker.lockBefore(iid, thread, lock);
                 if (isDeadlock) {
                     System.out.println("deadlock found in the current execution!");
@@ -127,77 +126,49 @@ public class SPDOnline extends AnalysisImpl {
 
     public void unlockAfter(Integer iid, Integer thread, Integer lock) {
         synchronized (ActiveChecker.lock) {
-            if (state.getLockHeldCount(thread, lock) == 1)
+            if (ignoreRentrantLock.unlockAfter(thread, lock))
                 lsTracker.unlockAfter(thread);
 
-            state.incClockThread(thread);
-            state.updateRelease(thread, lock);
-            state.removeLockFromLocksHeld(thread, lock);
+            checker.release(thread, lock);
         }
     }
 
     public void startBefore(Integer iid, Integer parent, Integer child) {
         synchronized (ActiveChecker.lock) {
-            state.addThread(parent);
-            state.incClockThread(parent);
-            state.addThread(parent, child);
+            checker.start(parent, child);
         }
     }
 
     public void joinAfter(Integer iid, Integer parent, Integer child) {
         synchronized (ActiveChecker.lock) {
-            state.incClockThread(parent);
-
-            VectorClock C_t = state.getThreadVC(parent);
-            VectorClock C_tc = state.getThreadVC(child);
-            C_t.updateMax(C_tc);
+            checker.join(parent, child);
         }
     }
 
+    /**
+     * The checker orders reads and writes with the other events itself, so
+     * they do not take ActiveChecker.lock.
+     */
     public void readBefore(Integer iid, Integer thread, Long memory, boolean isVolatile) {
-        synchronized (ActiveChecker.lock) {
-            state.addThread(thread);
-            state.incClockThread(thread);
-            VectorClock C_t = state.getThreadVC(thread);
-
-            if (state.variableToLastWriteThread.containsKey(memory)) {
-                int lastWriteThread = state.variableToLastWriteThread.get(memory);
-                VectorClock LW_v = state.lastWriteVariable.get(memory);
-
-                int lastWriteThreadId = state.getThreadId(lastWriteThread);
-                if (C_t.getClockIndex(lastWriteThreadId) < LW_v.getClockIndex(lastWriteThreadId)) 
-                    C_t.updateMax(LW_v);
-            }
-        }
+        checker.read(thread, memory);
     }
 
     public void writeBefore(Integer iid, Integer thread, Long memory, boolean isVolatile) {
         boolean pause = false;
-        Random rd = new Random();
-
-        if (rd.nextBoolean()) {
+        Writer w = writers.get();
+
+        // the first write after an acquisition may be delayed, at most
+        // MAX_PAUSE times per thread and per location
+        if (w.acquired && sleepDuration > 0 && w.random.nextBoolean()) {
+            w.acquired = false;
+            w.pauseCount++;
+            int countPerLoc;
             synchronized (writeLock) {
-                if (pauseThreads.contains(thread)) {
-                    pauseThreads.remove(thread);
-                    if (pauseCountPerLoc.containsKey(memory)) {
-                        pauseCountPerLoc.put(memory, pauseCountPerLoc.get(memory) + 1);
-                    } else {
-                        pauseCountPerLoc.put(memory, 1);
-                    }
-
-                    if (pauseCountPerThread.containsKey(thread)) {
-                        pauseCountPerThread.put(thread, pauseCountPerThread.get(thread) + 1);
-                    } else {
-                        pauseCountPerThread.put(thread, 1);
-                    }
-
-                    if (pauseCountPerLoc.get(memory) < MAX_PAUSE &&
-                            pauseCountPerThread.get(thread) < MAX_PAUSE &&
-                            sleepDuration > 0) {
-                        pause = true;
-                    }
-                }
+                Integer c = pauseCountPerLoc.get(memory);
+                countPerLoc = c == null ? 1 : Math.min(c + 1, MAX_PAUSE);
+                pauseCountPerLoc.put(memory, countPerLoc);
             }
+            pause = countPerLoc < MAX_PAUSE && w.pauseCount < MAX_PAUSE;
         }
 
         if (pause) {
@@ -208,18 +179,11 @@ public class SPDOnline extends AnalysisImpl {
             }
         }
 
-        synchronized (ActiveChecker.lock) {
-            state.addThread(thread);
-
-            state.incClockThread(thread);
-            VectorClock C_t = state.getThreadVC(thread);
-
-            state.lastWriteVariable.put(memory, new VectorClock(C_t));
-            state.variableToLastWriteThread.put(memory, thread);
-        }
+        checker.write(thread, memory);
     }
 
     public void finish() {
+        checker.close();
         System.out.println("\nTotal number of unique deadlocks: " + state.uniqueDeadlockCount);
         writeStat(Parameters.execNumberFile);
     }
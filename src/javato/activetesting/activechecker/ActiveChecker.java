@@ -1,14 +1,17 @@
 package javato.activetesting.activechecker;
 
+import javato.activetesting.analysis.ShutdownHooks;
 import javato.activetesting.common.MersenneTwisterFast;
-import javato.activetesting.common.WeakIdentityHashMap;
+import javato.activetesting.common.Parameters;
 import javato.activetesting.scheduler.StallBreaker;
+import javato.activetesting.scheduler.ThreadStates;
 
+import java.io.IOException;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Copyright (c) 2007-2008,
@@ -44,12 +47,15 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class ActiveChecker {
 
-    static private LinkedList<ActiveChecker> blockedThreads = new LinkedList<ActiveChecker>();
-    static private Map threadToSemaphoreAndTime = Collections.synchronizedMap(new WeakIdentityHashMap());
+    static private CheckerSet blockedThreads = new CheckerSet();
     final public static Object lock = new Object();
-    public static MersenneTwisterFast rand = new MersenneTwisterFast(System.currentTimeMillis());
+    public static MersenneTwisterFast rand = new MersenneTwisterFast(Parameters.seed);
     public final static AtomicBoolean dirty = new AtomicBoolean(false);
     private static double probability = 1.0;
+    // the decisions recorded or replayed, null if neither
+    private static final ScheduleLog schedule = openSchedule();
+    // ids of the threads started but not yet checking, for the schedule
+    private static final Map<Thread, String> startedIds = new IdentityHashMap<Thread, String>();
 
 
     static public int getBlockedThreadCount() {
@@ -57,74 +63,319 @@ public class ActiveChecker {
     }
 
     public static void reduceProbability() {
-        probability /= 2;
+        synchronized (lock) {
+            if (isReplaying()) return;
+            probability /= 2;
+            if (schedule != null) {
+                schedule.record(Thread.currentThread().getName(), 0, ScheduleLog.REDUCE, -1, null);
+            }
+        }
         System.out.println("Probability "+probability);
     }
 
-    class Pair {
-        int waitTime;
-        Semaphore sem;
-        ActiveChecker checker;
+    private static ScheduleLog openSchedule() {
+        if (Parameters.scheduleRecordFile == null && Parameters.scheduleReplayFile == null) {
+            return null;
+        }
+        try {
+            ScheduleLog log = new ScheduleLog(Parameters.scheduleRecordFile, Parameters.scheduleReplayFile);
+            ShutdownHooks.add(new Thread() {
+                public void run() {
+                    flushSchedule();
+                }
+            });
+            return log;
+        } catch (IOException e) {
+            System.err.println("Cannot open the schedule: " + e);
+            return null;
+        }
+    }
 
-        Pair(int waitTime, Semaphore sem, ActiveChecker checker) {
-            this.waitTime = waitTime;
-            this.sem = sem;
-            this.checker = checker;
+    /**
+     * writes out the recorded decisions; called on exit, and by the
+     * analyses before they halt the JVM
+     */
+    public static void flushSchedule() {
+        if (schedule != null) {
+            schedule.flush();
         }
     }
 
+    private static boolean isReplaying() {
+        return schedule != null && schedule.isReplaying();
+    }
+
+    /**
+     * What a thread has been told to do by the checks it made: sleep, or
+     * stay parked until a checker of another thread lets it go.  Only the
+     * thread itself sets the pending pause; release is written by the
+     * releasing thread under lock and read by the parked thread.
+     */
+    private static class Parking {
+        final Thread thread;
+        int sleep;
+        ActiveChecker blocked;
+        volatile boolean released;
+        volatile int wakeUpSleep;
+        // for the schedule: the checks made so far, the iid of the last one,
+        // and the threads started
+        final String id;
+        int checks;
+        int iid = -1;
+        int children;
+
+        Parking(Thread thread) {
+            this.thread = thread;
+            String started;
+            synchronized (startedIds) {
+                started = startedIds.remove(thread);
+            }
+            id = started != null ? started : thread.getName().replace(' ', '_');
+        }
+
+        boolean isPending() {
+            return sleep > 0 || blocked != null;
+        }
+    }
+
+    private static final ThreadLocal<Parking> parkings = new ThreadLocal<Parking>() {
+        protected Parking initialValue() {
+            return new Parking(Thread.currentThread());
+        }
+    };
+
+    // slot in blockedThreads, -1 if not blocked
+    int slot = -1;
+    // where the check was made, -1 if unknown
+    protected final int iid;
+    private Parking parking;
+    private ThreadStates.State state;
+
+    public ActiveChecker() {
+        this(-1);
+    }
+
+    public ActiveChecker(int iid) {
+        this.iid = iid;
+    }
+
+    /**
+     * Called by the current thread before it starts child.  In the
+     * schedule, child is then known by the id of the current thread
+     * followed by '.' and the number of threads the current thread started
+     * before, e.g. "main.0.1", which stays the same from run to run while
+     * the threads start their children in the same order.  Other threads
+     * go by their name.
+     */
+    public static void startBefore(Thread child) {
+        if (schedule == null) return;
+        Parking p = parkings.get();
+        String id = p.id + "." + p.children++;
+        synchronized (startedIds) {
+            startedIds.put(child, id);
+        }
+    }
+
+    /**
+     * Records a decision of the current thread at its last check, once it
+     * has been carried out, and, when replaying, consumes the recorded one,
+     * which must be the same.
+     */
+    private static void decide(Parking p, char decision, String arg) {
+        ScheduleLog.Entry e = null;
+        if (isReplaying()) {
+            e = schedule.take(p.id, p.checks, decision);
+            if (e == null) {
+                schedule.diverge("thread " + p.id + " decides " + decision + " at check " + p.checks
+                        + " instead of " + schedule.peek());
+            }
+        }
+        schedule.record(p.id, p.checks, decision, p.iid, arg);
+        if (e != null) {
+            // the replay makes progress, which the livelock breaker must not break
+            dirty.set(true);
+            replayBreaks();
+        }
+    }
+
+    /**
+     * Replays the decisions of the breakers that come next, i.e. lets the
+     * recorded threads go at the point they were let go in the recorded
+     * run, and wakes up the threads waiting for their turn.
+     */
+    private static void replayBreaks() {
+        ScheduleLog.Entry e;
+        while ((e = schedule.peek()) != null) {
+            if (e.decision == ScheduleLog.REDUCE) {
+                schedule.skip();
+                probability /= 2;
+                schedule.record(e.thread, e.index, e.decision, e.iid, e.arg);
+            } else if (e.decision == ScheduleLog.BREAK) {
+                ActiveChecker checker = null;
+                for (int i = 0; i < blockedThreads.size() && checker == null; i++) {
+                    if (blockedThreads.get(i).parking.id.equals(e.thread)) {
+                        checker = blockedThreads.get(i);
+                    }
+                }
+                if (checker == null) {
+                    schedule.diverge("thread " + e.thread + " is not paused to be let go");
+                    break;
+                }
+                schedule.skip();
+                schedule.record(e.thread, e.index, e.decision, e.iid, e.arg);
+                checker.release(0);
+            } else {
+                break;
+            }
+        }
+        lock.notifyAll();
+    }
+
+    /**
+     * makes the current thread sleep for milliSeconds at its next
+     * blockIfRequired, like block(milliSeconds) without a checker
+     */
+    final protected static void sleepBeforeNextEvent(int milliSeconds) {
+        Parking p = parkings.get();
+        p.sleep = milliSeconds;
+        if (schedule != null) {
+            decide(p, ScheduleLog.SLEEP, Integer.toString(milliSeconds));
+        }
+    }
 
-    private Semaphore sem;
+    /**
+     * returns true or false at random, the same as in the recorded run when
+     * replaying
+     */
+    final protected static boolean choose() {
+        if (schedule == null) {
+            return rand.nextBoolean();
+        }
+        Parking p = parkings.get();
+        ScheduleLog.Entry e = schedule.peek();
+        boolean choice = e != null && e.is(p.id, p.checks, ScheduleLog.CHOICE) ? e.arg.equals("1") : rand.nextBoolean();
+        decide(p, ScheduleLog.CHOICE, choice ? "1" : "0");
+        return choice;
+    }
 
     final protected void block(int milliSeconds) {
+        Parking p = parkings.get();
         if (milliSeconds > 0) {
-            threadToSemaphoreAndTime.put(Thread.currentThread(), new Pair(milliSeconds, null, this));
+            p.sleep = milliSeconds;
+            if (schedule != null) {
+                decide(p, ScheduleLog.SLEEP, Integer.toString(milliSeconds));
+            }
         } else {
-            sem = new Semaphore();
+            p.released = false;
+            p.blocked = this;
+            parking = p;
             blockedThreads.add(this);
             dirty.set(true);
-            threadToSemaphoreAndTime.put(Thread.currentThread(), new Pair(0, sem, this));
+            if (ThreadStates.isEnabled()) {
+                state = ThreadStates.pause();
+            }
+            if (schedule != null) {
+                decide(p, ScheduleLog.PAUSE, null);
+            }
+            lock.notifyAll();
         }
     }
 
+    /**
+     * Called under lock when this checker stops being blocked, whoever lets
+     * it go.
+     */
+    protected void unblocked() {
+    }
+
+    /**
+     * lets the thread paused by this checker go; called by the checker of
+     * the current thread
+     */
     final protected void unblock(int milliSeconds) {
-        //System.out.println("Before "+blockedThreads.size());
+        release(milliSeconds);
+        if (schedule != null) {
+            decide(parkings.get(), ScheduleLog.RELEASE, parking.id);
+        }
+    }
+
+    private void release(int milliSeconds) {
         blockedThreads.remove(this);
+        unblocked();
         dirty.set(true);
-        //System.out.println("After "+blockedThreads.size());
-        sem.release(milliSeconds);
+        if (state != null) {
+            ThreadStates.resume(state);
+        }
+        parking.wakeUpSleep = milliSeconds;
+        parking.released = true;
+        LockSupport.unpark(parking.thread);
+    }
+
+    /**
+     * Waits until a thread is blocked.
+     *
+     * @return true iff no thread was blocked when called
+     */
+    public static boolean awaitBlockedThread() throws InterruptedException {
+        synchronized (lock) {
+            boolean waited = false;
+            while (blockedThreads.isEmpty()) {
+                lock.wait();
+                waited = true;
+            }
+            return waited;
+        }
+    }
+
+    private static int getActiveThreadCount() {
+        if (ThreadStates.isEnabled()) {
+            return ThreadStates.getLiveCount();
+        }
+        return StallBreaker.getActiveThreadCount();
     }
 
     final public static void blockIfRequired() {
-        Pair p = (Pair) threadToSemaphoreAndTime.remove(Thread.currentThread());
-        //System.out.println("blockIfRequired called");
-        if (p != null) {
-            //System.out.println("p is not null");
-
-            if (p.waitTime > 0) {
-                //System.out.println("p waitTime: " + p.waitTime);
-
-                try {
-                    Thread.sleep(p.waitTime);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+        Parking p = parkings.get();
+        if (p.sleep > 0) {
+            int sleep = p.sleep;
+            p.sleep = 0;
+            sleep(sleep);
+        } else if (p.blocked != null) {
+            ActiveChecker checker = p.blocked;
+            p.blocked = null;
+            if (!ThreadStates.isEnabled()) {
+                StallBreaker.breakAnyStall();
             } else {
-                //System.out.println("stall breaker break stall! ");
+                ThreadStates.breakAnyStall();
+            }
 
-                StallBreaker.breakAnyStall();
-                //System.out.println("stall breaker after call ");
-
-                try {
-                    //System.out.println("p sem acquire!");
-                    p.sem.acquire();
-                    //System.out.println("p sem acquiredd!");
-                } catch (InterruptedException e) {
-                    //System.out.println("p InterruptedException!");
-                    blockedThreads.remove(p.checker);
-                    dirty.set(true);
+            while (!p.released) {
+                LockSupport.park(checker);
+                if (Thread.currentThread().isInterrupted()) {
+                    synchronized (lock) {
+                        if (!p.released) {
+                            blockedThreads.remove(checker);
+                            checker.unblocked();
+                            dirty.set(true);
+                            if (checker.state != null) {
+                                ThreadStates.resume(checker.state);
+                            }
+                            return;
+                        }
+                    }
                 }
             }
+            if (p.wakeUpSleep > 0) {
+                sleep(p.wakeUpSleep);
+            }
+        }
+    }
+
+    private static void sleep(int milliSeconds) {
+        try {
+            Thread.sleep(milliSeconds);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
         }
     }
 
@@ -132,21 +383,57 @@ public class ActiveChecker {
         block(0);
     }
 
-    final public void check() {
+    /**
+     * returns true iff the current thread may be paused now: the random
+     * draw against the current probability succeeds, another application
+     * thread exists and the thread has no pause pending yet; when
+     * replaying, iff the recorded check did
+     */
+    final protected static boolean isCheckEnabled(int iid) {
+        return isCheckEnabled(iid, true);
+    }
+
+    private static boolean isCheckEnabled(int iid, boolean draw) {
         synchronized (lock) {
-            if (rand.nextDouble()<=probability) {
-                int activeThreadCount = StallBreaker.getActiveThreadCount();
-                if (activeThreadCount > 1 && threadToSemaphoreAndTime.get(Thread.currentThread()) == null) {
-                    check(blockedThreads);
+            Parking p = parkings.get();
+            if (schedule != null) {
+                p.checks++;
+                p.iid = iid;
+                if (isReplaying()) {
+                    try {
+                        schedule.awaitTurn(lock, p.id, p.checks, Parameters.scheduleReplayWait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        schedule.diverge("thread " + p.id + " interrupted");
+                    }
                 }
             }
+            boolean enabled;
+            if (isReplaying()) {
+                enabled = !schedule.peek().is(p.id, p.checks, ScheduleLog.SKIP);
+            } else {
+                enabled = (!draw || rand.nextDouble() <= probability)
+                        && getActiveThreadCount() > 1
+                        && !p.isPending();
+            }
+            if (!enabled && schedule != null) {
+                decide(p, ScheduleLog.SKIP, null);
+            }
+            return enabled;
+        }
+    }
+
+    final public void check() {
+        synchronized (lock) {
+            if (isCheckEnabled(iid, true)) {
+                check(blockedThreads);
+            }
         }
     }
 
     final public void check(int waitTime) {
         synchronized (lock) {
-            int activeThreadCount = StallBreaker.getActiveThreadCount();
-            if (activeThreadCount > 1 && threadToSemaphoreAndTime.get(Thread.currentThread()) == null) {
+            if (isCheckEnabled(iid, false)) {
                 block(waitTime);
             }
         }
@@ -158,12 +445,29 @@ public class ActiveChecker {
     }
 
 
+    /**
+     * lets a paused thread chosen at random go, to break a stall or a
+     * livelock.  A replayed schedule lets the recorded threads go itself,
+     * right after the decision they were let go at, so a stall or livelock
+     * in a replay means the run has left the schedule: the replay is given
+     * up first.
+     *
+     * @return true iff a thread was let go
+     */
     public static boolean unblockAThread() {
         synchronized (lock) {
             //System.out.println("Blockedthreads size "+ blockedThreads.size());
             if (blockedThreads.size() == 0) return false;
+            if (isReplaying()) {
+                schedule.diverge("the threads stall before " + schedule.peek());
+            }
             int randNum = rand.nextInt(blockedThreads.size());
-            blockedThreads.get(randNum).unblock(0);
+            ActiveChecker checker = blockedThreads.get(randNum);
+            if (schedule != null) {
+                Parking p = checker.parking;
+                schedule.record(p.id, p.checks, ScheduleLog.BREAK, p.iid, null);
+            }
+            checker.release(0);
             return true;
         }
     }
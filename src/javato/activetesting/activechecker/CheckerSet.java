@@ -0,0 +1,99 @@
+package javato.activetesting.activechecker;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * The paused checkers, in an array in which every checker knows its slot,
+ * so that adding, removing and picking a checker at random take constant
+ * time.  Removal moves the last checker into the freed slot, so the order
+ * is not kept.  Guarded by ActiveChecker.lock.
+ */
+class CheckerSet extends AbstractCollection<ActiveChecker> {
+    private ActiveChecker[] checkers = new ActiveChecker[16];
+    private int size = 0;
+
+    public int size() {
+        return size;
+    }
+
+    public ActiveChecker get(int i) {
+        return checkers[i];
+    }
+
+    public boolean add(ActiveChecker c) {
+        if (c.slot != -1) return false;
+        if (size == checkers.length) {
+            checkers = Arrays.copyOf(checkers, 2 * size);
+        }
+        c.slot = size;
+        checkers[size++] = c;
+        return true;
+    }
+
+    public boolean remove(Object o) {
+        ActiveChecker c = (ActiveChecker) o;
+        int i = c.slot;
+        if (i == -1 || i >= size || checkers[i] != c) return false;
+        ActiveChecker last = checkers[--size];
+        checkers[i] = last;
+        last.slot = i;
+        checkers[size] = null;
+        c.slot = -1;
+        return true;
+    }
+
+    public Iterator<ActiveChecker> iterator() {
+        return new Iterator<ActiveChecker>() {
+            private int i = 0;
+
+            public boolean hasNext() {
+                return i < size;
+            }
+
+            public ActiveChecker next() {
+                if (i >= size) throw new NoSuchElementException();
+                return checkers[i++];
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,230 @@
+package javato.activetesting.activechecker;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * The decisions of ActiveChecker, one line each in the order they were
+ * made: "thread index decision iid [arg]".  thread names the thread the
+ * decision is about, the same in every run: see ActiveChecker.startBefore.
+ * index counts the checks of that thread, and iid is where it made the
+ * check.
+ * <p/>
+ * A replayed log is read whole.  The decisions of one check were made
+ * under ActiveChecker.lock at once, so they form one group of lines, and a
+ * thread replaying a check waits until the groups before its own have been
+ * replayed.  The replay is given up, and the checker decides on its own
+ * again, when a decision does not match the log or a thread waits for its
+ * turn too long, or when the threads stall.  Guarded by
+ * ActiveChecker.lock, except for flush.
+ */
+class ScheduleLog {
+    static final char SKIP = 'N';      // the check did not pause or release
+    static final char PAUSE = 'P';
+    static final char SLEEP = 'Z';     // arg: milliseconds
+    static final char RELEASE = 'R';   // arg: the thread let go
+    static final char CHOICE = 'C';    // arg: 1 or 0, the random choice of a checker
+    static final char BREAK = 'B';     // a stall or livelock breaker let the paused thread go
+    static final char REDUCE = 'D';    // the pause probability was halved
+
+    static class Entry {
+        final String thread;
+        final int index;
+        final char decision;
+        final int iid;
+        final String arg;
+
+        Entry(String thread, int index, char decision, int iid, String arg) {
+            this.thread = thread;
+            this.index = index;
+            this.decision = decision;
+            this.iid = iid;
+            this.arg = arg;
+        }
+
+        boolean is(String thread, int index, char decision) {
+            return this.index == index && this.decision == decision && this.thread.equals(thread);
+        }
+
+        public String toString() {
+            return thread + " " + index + " " + decision + " " + iid + (arg == null ? "" : " " + arg);
+        }
+    }
+
+    private final Writer out;
+    private final List<Entry> entries = new ArrayList<Entry>();
+    // "thread index" -> position of the first decision of the check
+    private final Map<String, Integer> checks = new HashMap<String, Integer>();
+    private int next = 0;
+    private boolean replaying = false;
+
+    /**
+     * @param recordFile file the decisions are written to, null if none
+     * @param replayFile file of the decisions to replay, null if none
+     */
+    ScheduleLog(String recordFile, String replayFile) throws IOException {
+        if (replayFile != null) {
+            BufferedReader in = new BufferedReader(new FileReader(replayFile));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] fields = line.split(" ");
+                    if (fields.length < 4) continue;
+                    Entry e = new Entry(fields[0], Integer.parseInt(fields[1]), fields[2].charAt(0),
+                            Integer.parseInt(fields[3]), fields.length > 4 ? fields[4] : null);
+                    if (e.decision != BREAK && e.decision != REDUCE) {
+                        String key = e.thread + " " + e.index;
+                        if (!checks.containsKey(key)) {
+                            checks.put(key, entries.size());
+                        }
+                    }
+                    entries.add(e);
+                }
+            } finally {
+                in.close();
+            }
+            replaying = !entries.isEmpty();
+        }
+        out = recordFile == null ? null : new BufferedWriter(new FileWriter(recordFile), 1 << 16);
+    }
+
+    boolean isReplaying() {
+        return replaying;
+    }
+
+    /**
+     * writes a decision to the record file, if any; the writes are
+     * buffered until flush
+     */
+    void record(String thread, int index, char decision, int iid, String arg) {
+        if (out == null) return;
+        try {
+            out.write(thread);
+            out.write(' ');
+            out.write(Integer.toString(index));
+            out.write(' ');
+            out.write(decision);
+            out.write(' ');
+            out.write(Integer.toString(iid));
+            if (arg != null) {
+                out.write(' ');
+                out.write(arg);
+            }
+            out.write('\n');
+        } catch (IOException e) {
+            System.err.println("Error while writing the schedule: " + e);
+        }
+    }
+
+    /**
+     * writes the buffered decisions to the record file; the writer
+     * synchronizes itself, so this may be called without
+     * ActiveChecker.lock, e.g. by a shutdown hook or before a halt
+     */
+    void flush() {
+        if (out == null) return;
+        try {
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Error while writing the schedule: " + e);
+        }
+    }
+
+    /**
+     * Waits on lock, which the caller holds, until the checks recorded
+     * before the index-th check of thread have been replayed.
+     */
+    void awaitTurn(Object lock, String thread, int index, long timeout) throws InterruptedException {
+        Integer position = checks.get(thread + " " + index);
+        if (position == null) return;
+        long deadline = System.currentTimeMillis() + timeout;
+        while (replaying && next < position) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                diverge("check " + index + " of thread " + thread + " waits for " + entries.get(next));
+                return;
+            }
+            lock.wait(left);
+        }
+        if (replaying && next > position) {
+            diverge("check " + index + " of thread " + thread + " comes too late");
+        }
+    }
+
+    /**
+     * returns the next decision to replay, null if there is none
+     */
+    Entry peek() {
+        return replaying ? entries.get(next) : null;
+    }
+
+    /**
+     * consumes and returns the next decision to replay if it is the given
+     * one, returns null otherwise
+     */
+    Entry take(String thread, int index, char decision) {
+        Entry e = peek();
+        if (e == null || !e.is(thread, index, decision)) return null;
+        skip();
+        return e;
+    }
+
+    /**
+     * consumes the next decision to replay
+     */
+    void skip() {
+        if (++next == entries.size()) {
+            replaying = false;
+            System.out.println("Schedule replayed: " + next + " decisions");
+        }
+    }
+
+    void diverge(String why) {
+        if (replaying) {
+            replaying = false;
+            System.err.println("Schedule replay given up after " + next + " of " + entries.size()
+                    + " decisions: " + why);
+        }
+    }
+}
@@ -35,7 +35,7 @@ package javato.activetesting.analysis;
 abstract public class AnalysisImpl extends Thread implements Analysis {
     public AnalysisImpl() {
         initialize();
-        Runtime.getRuntime().addShutdownHook(this);
+        ShutdownHooks.add(this);
     }
 
     public void run() {
@@ -1,8 +1,7 @@
 package javato.activetesting.analysis;
 
-import javato.activetesting.common.Parameters;
-import javato.activetesting.scheduler.LivelockBreaker;
 import javato.activetesting.scheduler.StallBreaker;
+import javato.activetesting.scheduler.ThreadStates;
 
 /**
  * Copyright (c) 2007-2008,
@@ -39,9 +38,9 @@ import javato.activetesting.scheduler.StallBreaker;
 abstract public class CheckerAnalysisImpl extends Thread implements Analysis {
     public CheckerAnalysisImpl() {
         initialize();
-        (new LivelockBreaker(Parameters.livelockCheckerInterval)).start();
+        ThreadStates.enable();
         (new StallBreaker()).start();
-        Runtime.getRuntime().addShutdownHook(this);
+        ShutdownHooks.add(this);
     }
 
     public void run() {
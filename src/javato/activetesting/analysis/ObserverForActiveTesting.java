@@ -1,7 +1,9 @@
 package javato.activetesting.analysis;
 
+import javato.activetesting.activechecker.ActiveChecker;
 import javato.activetesting.common.Parameters;
 import javato.activetesting.common.IIDAccessCounter;
+import javato.activetesting.scheduler.ThreadStates;
 
 import java.util.LinkedList;
 
@@ -90,6 +92,7 @@ public class ObserverForActiveTesting extends Observer {
         if (isSynchronized) {
             ((LinkedList) lockStack.get()).addFirst(lock);
             analysis.lockBefore(iid, uniqueId(Thread.currentThread()), uniqueId(lock),lock);
+            if (ThreadStates.isEnabled()) ThreadStates.lockBefore(uniqueId(lock));
         } else {
             ((LinkedList) lockStack.get()).addFirst(null);
         }
@@ -104,10 +107,12 @@ public class ObserverForActiveTesting extends Observer {
             e.printStackTrace();
         }
         analysis.lockBefore(iid, uniqueId(Thread.currentThread()), oid, c);
+        if (ThreadStates.isEnabled()) ThreadStates.lockBefore(oid);
     }
 
     public static void myLockBefore(int iid, Object lock) {
         analysis.lockBefore(iid, uniqueId(Thread.currentThread()), uniqueId(lock),lock);
+        if (ThreadStates.isEnabled()) ThreadStates.lockBefore(uniqueId(lock));
     }
 
     public static void myUnlockAfter(int iid) {
@@ -118,6 +123,7 @@ public class ObserverForActiveTesting extends Observer {
         while (iid != entryIid + 1) { // this is a hack; needs better handling in future
             if (lock != null) {
                 analysis.unlockAfter(iid, uniqueId(Thread.currentThread()), uniqueId(lock));
+                if (ThreadStates.isEnabled()) ThreadStates.unlockAfter(uniqueId(lock));
             }
             lock = ls.removeFirst();
             entryIid = is.removeFirst();
@@ -128,15 +134,18 @@ public class ObserverForActiveTesting extends Observer {
         assert iid == entryIid + 1;
         if (lock != null) {
             analysis.unlockAfter(iid, uniqueId(Thread.currentThread()), uniqueId(lock));
+            if (ThreadStates.isEnabled()) ThreadStates.unlockAfter(uniqueId(lock));
         }
     }
 
     public static void myUnlockAfter(int iid, int oid) {
         analysis.unlockAfter(iid, uniqueId(Thread.currentThread()), oid);
+        if (ThreadStates.isEnabled()) ThreadStates.unlockAfter(oid);
     }
 
     public static void myUnlockAfter(int iid, Object lock) {
         analysis.unlockAfter(iid, uniqueId(Thread.currentThread()), uniqueId(lock));
+        if (ThreadStates.isEnabled()) ThreadStates.unlockAfter(uniqueId(lock));
     }
 
     public static void myNewExprInANonStaticMethodAfter(int iid, Object o, Object objOnWhichMethodIsInvoked) {
@@ -148,6 +157,8 @@ public class ObserverForActiveTesting extends Observer {
     }
 
     public static void myStartBefore(int iid, Object t) {
+        if (ThreadStates.isEnabled()) ThreadStates.startBefore((Thread) t);
+        ActiveChecker.startBefore((Thread) t);
         analysis.startBefore(iid, uniqueId(Thread.currentThread()), uniqueId(t));
     }
 
@@ -158,9 +169,11 @@ public class ObserverForActiveTesting extends Observer {
 
     public static void myWaitBefore(int iid, Object lock) {
         analysis.waitBefore(iid, uniqueId(Thread.currentThread()), uniqueId(lock));
+        if (ThreadStates.isEnabled()) ThreadStates.waitBefore(uniqueId(lock));
     }
 
     public static void myWaitAfter(int iid, Object lock) {
+        if (ThreadStates.isEnabled()) ThreadStates.waitAfter(uniqueId(lock));
         analysis.waitAfter(iid, uniqueId(Thread.currentThread()), uniqueId(lock));
     }
 
@@ -173,6 +186,7 @@ public class ObserverForActiveTesting extends Observer {
     }
 
     public static void myJoinAfter(int iid, Object thread) {
+        if (ThreadStates.isEnabled()) ThreadStates.joinAfter((Thread) thread);
         analysis.joinAfter(iid, uniqueId(Thread.currentThread()), uniqueId(thread));
     }
 
@@ -0,0 +1,76 @@
+package javato.activetesting.analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * The shutdown hooks of the analyses.  They are registered with the
+ * runtime as usual, so they run when the JVM exits; a trial that shares
+ * its JVM with other trials runs them with {@link #runAll(long)} when the
+ * trial ends instead.
+ */
+public class ShutdownHooks {
+    private static final List<Thread> hooks = new ArrayList<Thread>();
+
+    public static synchronized void add(Thread hook) {
+        hooks.add(hook);
+        Runtime.getRuntime().addShutdownHook(hook);
+    }
+
+    /**
+     * Unregisters the hooks and runs them concurrently, as the JVM would.
+     * returns false iff some hook did not finish within timeout milliseconds
+     */
+    public static boolean runAll(long timeout) throws InterruptedException {
+        List<Thread> toRun;
+        synchronized (ShutdownHooks.class) {
+            toRun = new ArrayList<Thread>(hooks);
+            hooks.clear();
+        }
+        for (Thread hook : toRun) {
+            Runtime.getRuntime().removeShutdownHook(hook);
+            hook.start();
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        for (Thread hook : toRun) {
+            hook.join(Math.max(1, deadline - System.currentTimeMillis()));
+            if (hook.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,163 @@
+package javato.activetesting.common;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * The error ids a campaign targets in one run, i.e. the comma separated
+ * javato.activetesting.errorids, and the ones earlier runs confirmed.  A
+ * run appends a line "kind:id" to the stat file for every target it
+ * confirms, e.g. "race:12" or "deadlock:3", and later runs skip them.
+ * A run that can test only one target at a time appends "kind-tried:id"
+ * when it starts on it, so later runs move on to the targets tried least.
+ */
+public class ConfirmedTargets {
+    public static final String RACE = "race";
+    public static final String DEADLOCK = "deadlock";
+    private static final String TRIED = "-tried";
+
+    /**
+     * returns the error ids of kind confirmed by earlier runs
+     */
+    public static Set<Integer> read(String file, String kind) {
+        String prefix = kind + ":";
+        Set<Integer> ret = new HashSet<Integer>();
+        try {
+            BufferedReader in = new BufferedReader(new FileReader(file));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(prefix)) {
+                    ret.add(Integer.valueOf(line.substring(prefix.length()).trim()));
+                }
+            }
+            in.close();
+        } catch (IOException e) {
+            // nothing confirmed yet
+        } catch (NumberFormatException e) {
+            System.err.println("Error while reading " + file);
+        }
+        return ret;
+    }
+
+    /**
+     * returns the ids of the comma separated list errorIds that are not
+     * confirmed in file yet, in list order
+     */
+    public static List<Integer> pending(String errorIds, String file, String kind) {
+        Set<Integer> confirmed = read(file, kind);
+        List<Integer> ret = new ArrayList<Integer>();
+        for (String id : errorIds.split(",")) {
+            if (id.trim().length() > 0) {
+                Integer errorId = Integer.valueOf(id.trim());
+                if (!confirmed.contains(errorId) && !ret.contains(errorId)) {
+                    ret.add(errorId);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * records errorIds as confirmed targets of kind
+     */
+    public static void append(String file, String kind, List<Integer> errorIds) {
+        try {
+            PrintWriter pw = new PrintWriter(new FileWriter(file, true));
+            for (Integer errorId : errorIds) {
+                pw.println(kind + ":" + errorId);
+            }
+            pw.close();
+        } catch (IOException e) {
+            System.err.println("Error while writing to " + file);
+        }
+    }
+
+    /**
+     * returns the first of pending tried least often by earlier runs, -1 if
+     * pending is empty
+     */
+    public static int leastTried(List<Integer> pending, String file, String kind) {
+        Map<Integer, Integer> tries = tries(file, kind);
+        int ret = -1, min = Integer.MAX_VALUE;
+        for (Integer errorId : pending) {
+            Integer n = tries.get(errorId);
+            if ((n == null ? 0 : n) < min) {
+                min = n == null ? 0 : n;
+                ret = errorId;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * records that a run is testing errorId of kind
+     */
+    public static void markTried(String file, String kind, int errorId) {
+        append(file, kind + TRIED, Collections.singletonList(errorId));
+    }
+
+    private static Map<Integer, Integer> tries(String file, String kind) {
+        String prefix = kind + TRIED + ":";
+        Map<Integer, Integer> ret = new HashMap<Integer, Integer>();
+        try {
+            BufferedReader in = new BufferedReader(new FileReader(file));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(prefix)) {
+                    Integer errorId = Integer.valueOf(line.substring(prefix.length()).trim());
+                    Integer n = ret.get(errorId);
+                    ret.put(errorId, n == null ? 1 : n + 1);
+                }
+            }
+            in.close();
+        } catch (IOException e) {
+            // nothing tried yet
+        } catch (NumberFormatException e) {
+            System.err.println("Error while reading " + file);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,221 @@
+package javato.activetesting.common;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * Versioned binary store of predicted errors (races, deadlock cycles) with an
+ * offset index, so that a confirmation run can read the single entry it
+ * targets without deserializing all the others.
+ * <p/>
+ * Layout (all numbers big-endian):
+ * <pre>
+ *   int MAGIC, int VERSION
+ *   entry 0 ... entry n-1     each one a standalone Java serialization stream
+ *   int n, long offset[0..n]  offset[n] is the end of the last entry
+ *   long indexOffset, int MAGIC
+ * </pre>
+ */
+public class ErrorStore {
+    public static final int MAGIC = 0x43464553; // "CFES"
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int TRAILER_SIZE = 12;
+
+    /**
+     * writes the entries in iteration order, entry i gets index i
+     *
+     * @param file
+     * @param entries
+     * @throws IOException
+     */
+    public static void write(String file, Collection<? extends Serializable> entries) throws IOException {
+        long[] offsets = new long[entries.size() + 1];
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            long pos = HEADER_SIZE;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            int i = 0;
+            for (Serializable entry : entries) {
+                bytes.reset();
+                ObjectOutputStream oos = new ObjectOutputStream(bytes);
+                oos.writeObject(entry);
+                oos.close();
+                offsets[i++] = pos;
+                bytes.writeTo(out);
+                pos += bytes.size();
+            }
+            offsets[i] = pos;
+            out.writeInt(i);
+            for (int j = 0; j <= i; j++) {
+                out.writeLong(offsets[j]);
+            }
+            out.writeLong(pos);
+            out.writeInt(MAGIC);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * returns true iff file exists and is in the indexed format,
+     * false for a missing file or a legacy serialized error.log
+     *
+     * @param file
+     * @return
+     */
+    public static boolean isErrorStore(String file) {
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                return in.readInt() == MAGIC;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * returns the number of entries in the store
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static int size(String file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(indexOffset(raf));
+            return raf.readInt();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * reads the entry with the given 0-based index, seeking directly to it
+     *
+     * @param file
+     * @param index
+     * @return
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public static Serializable read(String file, int index) throws IOException, ClassNotFoundException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long indexOffset = indexOffset(raf);
+            raf.seek(indexOffset);
+            int n = raf.readInt();
+            if (index < 0 || index >= n) {
+                throw new IndexOutOfBoundsException("Error " + (index + 1) + " not in " + file + " with " + n + " errors");
+            }
+            raf.seek(indexOffset + 4 + 8L * index);
+            long start = raf.readLong();
+            long end = raf.readLong();
+            byte[] entry = new byte[(int) (end - start)];
+            raf.seek(start);
+            raf.readFully(entry);
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(entry));
+            return (Serializable) in.readObject();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * reads all entries in index order with a single sequential scan
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public static List<Serializable> readAll(String file) throws IOException, ClassNotFoundException {
+        long[] offsets;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(indexOffset(raf));
+            offsets = new long[raf.readInt() + 1];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = raf.readLong();
+            }
+        } finally {
+            raf.close();
+        }
+        List<Serializable> ret = new ArrayList<Serializable>(offsets.length - 1);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            in.skipBytes(HEADER_SIZE);
+            for (int i = 0; i + 1 < offsets.length; i++) {
+                byte[] entry = new byte[(int) (offsets[i + 1] - offsets[i])];
+                in.readFully(entry);
+                ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(entry));
+                ret.add((Serializable) ois.readObject());
+            }
+        } finally {
+            in.close();
+        }
+        return ret;
+    }
+
+    private static long indexOffset(RandomAccessFile raf) throws IOException {
+        if (raf.length() < HEADER_SIZE + TRAILER_SIZE) {
+            throw new IOException("Truncated error store");
+        }
+        raf.seek(0);
+        int magic = raf.readInt();
+        int version = raf.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("Not an error store");
+        }
+        if (version != VERSION) {
+            throw new IOException("Unsupported error store version " + version);
+        }
+        raf.seek(raf.length() - TRAILER_SIZE);
+        long indexOffset = raf.readLong();
+        if (raf.readInt() != MAGIC) {
+            throw new IOException("Truncated error store");
+        }
+        return indexOffset;
+    }
+}
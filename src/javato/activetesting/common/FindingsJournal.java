@@ -0,0 +1,233 @@
+package javato.activetesting.common;
+
+import java.io.*;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * Append-only journal of findings (races, deadlock cycles, ...) that is
+ * filled by a background writer thread while the analysis runs.
+ * <p/>
+ * Every finding is written as a self-contained frame
+ * (length, crc, serialized kind and payload) straight to the file, so a run
+ * that is halted or killed keeps everything that reached the writer.  A torn
+ * last frame is detected by its length or checksum and dropped by
+ * {@link #recover(String, String)}.
+ * <p/>
+ * The optional message of a finding is converted to a String and printed by
+ * the writer thread, which keeps iid to line resolution and console output
+ * off the instrumented threads.
+ * <p/>
+ * A journal backs the error.log its run writes at the end, so only analyses
+ * that write error.log may open one: a journal newer than error.log replaces it.
+ */
+public class FindingsJournal {
+    public static final String RACE = "race";
+    public static final String DEADLOCK = "deadlock";
+
+    // name is ignored by the stall breakers when counting application threads
+    public static final String WRITER_THREAD_NAME = "ipc3";
+
+    private static final Entry CLOSE = new Entry(null, null, null);
+
+    private final LinkedBlockingQueue<Entry> queue = new LinkedBlockingQueue<Entry>();
+    private final String file;
+    private Thread writer;
+    private boolean closed = false;
+
+    public FindingsJournal(String file) {
+        this.file = file;
+        final DataOutputStream out;
+        try {
+            out = new DataOutputStream(new FileOutputStream(file));
+        } catch (IOException e) {
+            System.err.println("Error while opening " + file);
+            closed = true;
+            return;
+        }
+        writer = new Thread(WRITER_THREAD_NAME) {
+            public void run() {
+                drain(out);
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a finding.  The message, if not null, is converted with
+     * toString() and printed by the writer thread.
+     *
+     * @param kind    RACE or DEADLOCK
+     * @param finding the finding to persist
+     * @param message lazily rendered console message, may be null
+     */
+    public void append(String kind, Serializable finding, Object message) {
+        if (!closed) {
+            queue.add(new Entry(kind, finding, message));
+        }
+    }
+
+    /**
+     * Waits until all queued findings have been written and stops the writer.
+     */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        queue.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    private void drain(DataOutputStream out) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CRC32 crc = new CRC32();
+        try {
+            while (true) {
+                Entry e = queue.take();
+                if (e == CLOSE) break;
+                if (e.message != null) {
+                    System.out.println(e.message.toString());
+                }
+                bytes.reset();
+                ObjectOutputStream oos = new ObjectOutputStream(bytes);
+                oos.writeUTF(e.kind);
+                oos.writeObject(e.finding);
+                oos.close();
+                crc.reset();
+                crc.update(bytes.toByteArray(), 0, bytes.size());
+                out.writeInt(bytes.size());
+                out.writeLong(crc.getValue());
+                bytes.writeTo(out);
+                // unbuffered: every frame is handed to the OS before the next take()
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+        } catch (IOException e) {
+            System.err.println("Error while writing to " + file);
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /**
+     * Reads back all complete findings of the given kind, in the order in which
+     * they were appended.  Reading stops silently at the first torn or corrupt
+     * frame, which is what an abruptly terminated run leaves behind.
+     *
+     * @param file journal file
+     * @param kind RACE or DEADLOCK
+     * @return the recovered findings, empty if the journal does not exist
+     */
+    public static List<Serializable> recover(String file, String kind) {
+        List<Serializable> ret = new LinkedList<Serializable>();
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (IOException e) {
+            return ret;
+        }
+        CRC32 crc = new CRC32();
+        try {
+            while (true) {
+                int len = in.readInt();
+                long sum = in.readLong();
+                if (len < 0) break;
+                byte[] frame = new byte[len];
+                in.readFully(frame);
+                crc.reset();
+                crc.update(frame, 0, len);
+                if (crc.getValue() != sum) break;
+                ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(frame));
+                String k = ois.readUTF();
+                Object finding = ois.readObject();
+                if (k.equals(kind)) {
+                    ret.add((Serializable) finding);
+                }
+            }
+        } catch (EOFException e) {
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * returns true iff the journal was written after the report file, i.e. the
+     * run that produced the journal did not get to write its report
+     *
+     * @param journalFile
+     * @param reportFile
+     * @return
+     */
+    public static boolean isNewerThan(String journalFile, String reportFile) {
+        File journal = new File(journalFile);
+        File report = new File(reportFile);
+        if (!journal.exists()) return false;
+        return !report.exists() || journal.lastModified() > report.lastModified();
+    }
+
+    private static class Entry {
+        final String kind;
+        final Serializable finding;
+        final Object message;
+
+        Entry(String kind, Serializable finding, Object message) {
+            this.kind = kind;
+            this.finding = finding;
+            this.message = message;
+        }
+    }
+}
@@ -39,7 +39,23 @@ public class Parameters {
     public static final long stallCheckerInterval = Long.getLong("javato.activeChecker.stallCheckerInterval", 10);
     public static final long livelockCheckerInterval = Long.getLong("javato.activeChecker.livelockCheckerInterval", 200);
     public static final int deadlockCycleLength = Integer.getInteger("javato.deadlock.cycle.length", 2);
+    // longest deadlock pattern SyncPD looks for, 2 for pairs only; not javato.deadlock.cycle.length,
+    // which counts iGoodlock rounds and where 0 means unbounded
+    public static final int syncpdCycleLength = Integer.getInteger("javato.syncpd.cycle.length", 2);
+    // SP-ideal computations SyncPD may spend per acquisition on cycles longer than two
+    public static final int syncpdBudget = Integer.getInteger("javato.syncpd.budget", 1000);
+    // acquisitions between two collections of the SyncPD histories, 0 to never collect
+    public static final int syncpdGcInterval = Integer.getInteger("javato.syncpd.gc.interval", 1000);
+    public static final int igoodlockThreads = Integer.getInteger("javato.igoodlock.threads", Runtime.getRuntime().availableProcessors());
+    public static final boolean igoodlockOnline = Boolean.getBoolean("javato.igoodlock.online");
     public static final int maxPausesInActiveTesting = Integer.getInteger("javato.max.iid.count",100);
+    // seed of the random choices of ActiveChecker
+    public static final long seed = Long.getLong("javato.activetesting.seed", System.currentTimeMillis());
+    // file ActiveChecker writes its decisions to, and file of recorded decisions it replays instead
+    public static final String scheduleRecordFile = System.getProperty("javato.activetesting.schedule.record");
+    public static final String scheduleReplayFile = System.getProperty("javato.activetesting.schedule.replay");
+    // milliseconds a thread waits for its turn in a replay before the replay is given up
+    public static final long scheduleReplayWait = Long.getLong("javato.activetesting.schedule.replay.wait", 2000);
 
     // hybrid race detection and thrille specific
     public static final int N_VECTOR_CLOCKS_WINDOW = 5;
@@ -47,6 +63,13 @@ public class Parameters {
     public static final boolean LOG_IID_VISIT_COUNT = Boolean.getBoolean("javato.track.iid.visit.count");
     public static final boolean resolveOrder = Boolean.getBoolean("javato.race.resolve.order");
     public static final int errorId = Integer.getInteger("javato.activetesting.errorid", -1);
+    // comma separated error ids targeted together by one run, e.g. the contents of error.list
+    public static final String errorIds = System.getProperty("javato.activetesting.errorids");
+    // threads RaceFuzzer may keep paused at once, so that a run targeting many races still progresses;
+    // bounded by default only when errorIds is set, a single race pausing at few iids anyway
+    public static final int maxPausedThreads = Integer.getInteger("javato.activetesting.max.paused", errorIds != null ? 4 : Integer.MAX_VALUE);
+    // seconds a trial run by TrialRunner may take before it is stopped, 0 for no limit
+    public static final long trialTimeout = Long.getLong("javato.activetesting.trial.timeout", 0);
     public static final long thrilleStallCheckerInterval = 20;
     public final static int raceBreakpointWaittime = 1000;
     public final static boolean removeOlderRace = Boolean.getBoolean("javato.hybrid.removeoldrace");
@@ -65,12 +88,14 @@ public class Parameters {
 
     // various files for persistent data and logs
     public static final String execNumberFile = "/root/table2/calfuzzer/execNumberFile.txt";
-    public static final String iidToLineMapFile = "iidToLine.map";
-    public static final String usedObjectId = "javato.usedids";
+    public static final String iidToLineMapFile = System.getProperty("javato.iidtoline.file", "iidToLine.map");
+    public static final String usedObjectId = System.getProperty("javato.usedids.file", "javato.usedids");
     public static final String ERROR_STAT_FILE = System.getProperty("javato.activetesting.errorstat.file", "error.stat");
     public static final String ERROR_LOG_FILE = System.getProperty("javato.activetesting.errorlog.file", "error.log");
     public static final String ERROR_LIST_FILE = System.getProperty("javato.activetesting.errorlist.file", "error.list");
     public static final String ERROR_STALL_FILE = System.getProperty("javato.activetesting.errorstall.file", "error.stall");
+    public static final String ERROR_JOURNAL_FILE = System.getProperty("javato.activetesting.errorjournal.file", "error.journal");
+    public static final String TRIALS_FILE = System.getProperty("javato.activetesting.trials.file", "error.trials");
 
     // entry class and must be specified
     public static final String analysisClass = System.getProperty("javato.activetesting.analysis.class");
@@ -1,6 +1,8 @@
 package javato.activetesting.deterministicscheduler;
 
+import javato.activetesting.common.FindingsJournal;
 import javato.activetesting.common.Parameters;
+import javato.activetesting.syncpd.SyncPDChecker;
 import javato.activetesting.activechecker.ActiveChecker;
 
 import java.lang.management.ManagementFactory;
@@ -98,6 +100,8 @@ public class StallBreaker extends Thread {
 
         for (int i = 0; i < numThreads; i++) {
             if (!tList[i].getName().equals("sb1")
+                    && !tList[i].getName().equals(FindingsJournal.WRITER_THREAD_NAME)
+                    && !tList[i].getName().equals(SyncPDChecker.CHECKER_THREAD_NAME)
                     && !tList[i].getName().equals("Keep-Alive-Timer")
                     && !tList[i].getName().equals("DestroyJavaVM")) {
 
@@ -128,6 +132,8 @@ public class StallBreaker extends Thread {
             pw.println("Printing Thread State for "+(!isDeadlock?"(communication deadlock)":"(resource deadlock)"));
             for (int i = 0; i < numThreads; i++) {
                 if (!tList[i].getName().equals("sb1")
+                        && !tList[i].getName().equals(FindingsJournal.WRITER_THREAD_NAME)
+                        && !tList[i].getName().equals(SyncPDChecker.CHECKER_THREAD_NAME)
                         && !tList[i].getName().equals("Keep-Alive-Timer")
                         && !tList[i].getName().equals("DestroyJavaVM")) {
                     pw.println("Thread " + tList[i] + " in state " + tList[i].getState() + " isDaemon " + tList[i].isDaemon());
@@ -61,6 +61,14 @@ public class CommutativePair implements Serializable {
         isVolatile = aVolatile;
     }
 
+    public Integer getX() {
+        return x;
+    }
+
+    public Integer getY() {
+        return y;
+    }
+
     public boolean containsWrite(Integer iid) {
         return (x.equals(iid) && !isXRead) || (y.equals(iid) && !isYRead);
     }
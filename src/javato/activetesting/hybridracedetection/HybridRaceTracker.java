@@ -1,5 +1,7 @@
 package javato.activetesting.hybridracedetection;
 
+import javato.activetesting.common.ErrorStore;
+import javato.activetesting.common.FindingsJournal;
 import javato.activetesting.common.Parameters;
 import javato.activetesting.common.MutableLong;
 import javato.activetesting.lockset.LockSet;
@@ -50,7 +52,7 @@ public class HybridRaceTracker {
     private Map<Integer, MutableLong> iidVisitCount;
     private int lockRaceCount = 0;
     private int dataRaceCount = 0;
-
+    private FindingsJournal journal;
 
     public HybridRaceTracker() {
         readMap = new TreeMap<Long, Map<Integer, LinkedList<VCLockPair>>>();
@@ -58,15 +60,32 @@ public class HybridRaceTracker {
         iidVisitCount = new TreeMap<Integer, MutableLong>();
 
         alreadySeenRaces = getRacesFromFile();
+        journal = new FindingsJournal(Parameters.ERROR_JOURNAL_FILE);
+        for (CommutativePair cp : alreadySeenRaces) {
+            journal.append(FindingsJournal.RACE, cp, null);
+        }
     }
 
     public static LinkedHashSet<CommutativePair> getRacesFromFile() {
         LinkedHashSet<CommutativePair> alreadySeenRaces;
         ObjectInputStream in;
+        if (FindingsJournal.isNewerThan(Parameters.ERROR_JOURNAL_FILE, Parameters.ERROR_LOG_FILE)) {
+            return recoverRaces();
+        }
         try {
-            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(Parameters.ERROR_LOG_FILE)));
-            alreadySeenRaces = (LinkedHashSet<CommutativePair>) in.readObject();
-            in.close();
+            if (ErrorStore.isErrorStore(Parameters.ERROR_LOG_FILE)) {
+                alreadySeenRaces = new LinkedHashSet<CommutativePair>();
+                for (Serializable cp : ErrorStore.readAll(Parameters.ERROR_LOG_FILE)) {
+                    alreadySeenRaces.add((CommutativePair) cp);
+                }
+            } else {
+                in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(Parameters.ERROR_LOG_FILE)));
+                alreadySeenRaces = new LinkedHashSet<CommutativePair>();
+                for (Object cp : (LinkedHashSet<?>) in.readObject()) {
+                    alreadySeenRaces.add((CommutativePair) cp);
+                }
+                in.close();
+            }
         } catch (IOException e) {
             alreadySeenRaces = new LinkedHashSet<CommutativePair>();
         } catch (ClassNotFoundException e) {
@@ -75,17 +94,72 @@ public class HybridRaceTracker {
         return alreadySeenRaces;
     }
 
+    /**
+     * returns the race with the given 1-based error id, reading only that
+     * entry when error.log is an indexed ErrorStore
+     *
+     * @param errorId
+     * @return
+     */
+    public static CommutativePair getRaceFromFile(int errorId) {
+        if (FindingsJournal.isNewerThan(Parameters.ERROR_JOURNAL_FILE, Parameters.ERROR_LOG_FILE)
+                || !ErrorStore.isErrorStore(Parameters.ERROR_LOG_FILE)) {
+            return (CommutativePair) (getRacesFromFile().toArray())[errorId - 1];
+        }
+        try {
+            return (CommutativePair) ErrorStore.read(Parameters.ERROR_LOG_FILE, errorId - 1);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * returns the races with the given 1-based error ids, in the same order,
+     * reading error.log once
+     *
+     * @param errorIds
+     * @return
+     */
+    public static List<CommutativePair> getRacesFromFile(List<Integer> errorIds) {
+        List<CommutativePair> ret = new ArrayList<CommutativePair>();
+        if (FindingsJournal.isNewerThan(Parameters.ERROR_JOURNAL_FILE, Parameters.ERROR_LOG_FILE)
+                || !ErrorStore.isErrorStore(Parameters.ERROR_LOG_FILE)) {
+            Object[] races = getRacesFromFile().toArray();
+            for (Integer errorId : errorIds) {
+                ret.add(errorId >= 1 && errorId <= races.length ? (CommutativePair) races[errorId - 1] : null);
+            }
+            return ret;
+        }
+        for (Integer errorId : errorIds) {
+            ret.add(getRaceFromFile(errorId));
+        }
+        return ret;
+    }
+
+    private static LinkedHashSet<CommutativePair> recoverRaces() {
+        // the last race detection run did not terminate normally
+        LinkedHashSet<CommutativePair> alreadySeenRaces = new LinkedHashSet<CommutativePair>();
+        for (Serializable cp : FindingsJournal.recover(Parameters.ERROR_JOURNAL_FILE, FindingsJournal.RACE)) {
+            // a race journaled twice was moved to the end by removeOlderRace
+            alreadySeenRaces.remove(cp);
+            alreadySeenRaces.add((CommutativePair) cp);
+        }
+        System.out.println("Recovered " + alreadySeenRaces.size() + " races from " + Parameters.ERROR_JOURNAL_FILE);
+        return alreadySeenRaces;
+    }
+
     public void dumpRaces() {
-        ObjectOutputStream out;
+        journal.close();
         javato.activetesting.analysis.Observer.writeIntegerList(Parameters.ERROR_LIST_FILE, alreadySeenRaces.size());
         try {
-            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(Parameters.ERROR_LOG_FILE)));
-            out.writeObject(alreadySeenRaces);
+            ErrorStore.write(Parameters.ERROR_LOG_FILE, alreadySeenRaces);
             for(CommutativePair cp:alreadySeenRaces) {
                 cp.printcryptic(System.out);
             }
             System.out.println("# of data races " + dataRaceCount + " and lock races "+lockRaceCount);
-            out.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -152,26 +226,12 @@ public class HybridRaceTracker {
                                         alreadySeenRaces.add(cp);
                                         if (isLock) lockRaceCount++;
                                         else dataRaceCount++;
-                                        if (Parameters.LOG_IID_VISIT_COUNT) {
-                                            if (isLock)
-                                                System.out.print("Lock race between ");
-                                            else
-                                                System.out.print("Data race between ");
-
-                                            System.out.println(javato.activetesting.analysis.Observer.getIidToLine(iid) + ":"+iidVisitCount+ " and "
-                                                    + javato.activetesting.analysis.Observer.getIidToLine(iid2)+":"+iid2Count);
-                                        } else {
-                                            if (isLock)
-                                                System.out.print("Lock race between ");
-                                            else
-                                                System.out.print("Data race between ");
-                                            System.out.println(javato.activetesting.analysis.Observer.getIidToLine(iid) + " and "
-                                                    + javato.activetesting.analysis.Observer.getIidToLine(iid2));
-
-                                        }
+                                        journal.append(FindingsJournal.RACE, cp,
+                                                new RaceReport(iid, iidVisitCount, iid2, iid2Count, isLock));
                                     } else if (Parameters.removeOlderRace) {
                                         alreadySeenRaces.remove(cp);
                                         alreadySeenRaces.add(cp);
+                                        journal.append(FindingsJournal.RACE, cp, null);
                                     }
                                 }
                             }
@@ -228,6 +288,35 @@ public class HybridRaceTracker {
     }
 
 
+    /**
+     * Console message of a newly found race.  Rendered by the journal writer
+     * so that iid to line lookups do not happen under ActiveChecker.lock.
+     */
+    private static class RaceReport {
+        private final int iid1, iid2;
+        private final long count1, count2;
+        private final boolean isLock;
+
+        RaceReport(int iid1, long count1, int iid2, long count2, boolean isLock) {
+            this.iid1 = iid1;
+            this.count1 = count1;
+            this.iid2 = iid2;
+            this.count2 = count2;
+            this.isLock = isLock;
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(isLock ? "Lock race between " : "Data race between ");
+            sb.append(javato.activetesting.analysis.Observer.getIidToLine(iid1));
+            if (Parameters.LOG_IID_VISIT_COUNT) sb.append(":").append(count1);
+            sb.append(" and ");
+            sb.append(javato.activetesting.analysis.Observer.getIidToLine(iid2));
+            if (Parameters.LOG_IID_VISIT_COUNT) sb.append(":").append(count2);
+            return sb.toString();
+        }
+    }
+
     public void printLocation() {
         Throwable t = new Throwable();
         StackTraceElement[] elems = t.getStackTrace();
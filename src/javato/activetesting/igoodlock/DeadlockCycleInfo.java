@@ -1,9 +1,15 @@
 package javato.activetesting.igoodlock;
 
+import javato.activetesting.common.ErrorStore;
+import javato.activetesting.common.FindingsJournal;
 import javato.activetesting.common.Parameters;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -51,7 +57,18 @@ public class DeadlockCycleInfo implements Serializable {
 
     public static DeadlockCycleInfo read() {
         ObjectInputStream in;
+        if (FindingsJournal.isNewerThan(Parameters.ERROR_JOURNAL_FILE, Parameters.ERROR_LOG_FILE)) {
+            return recover();
+        }
         try {
+            if (ErrorStore.isErrorStore(Parameters.ERROR_LOG_FILE)) {
+                List<Serializable> entries = ErrorStore.readAll(Parameters.ERROR_LOG_FILE);
+                DeadlockCycleInfo cycle = new DeadlockCycleInfo(entries.size());
+                for (Serializable c : entries) {
+                    cycle.cycles.add(asCycle(c));
+                }
+                return cycle;
+            }
             in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(Parameters.ERROR_LOG_FILE)));
             DeadlockCycleInfo cycle = (DeadlockCycleInfo) in.readObject();
             in.close();
@@ -64,25 +81,130 @@ public class DeadlockCycleInfo implements Serializable {
         return null;
     }
 
+    /**
+     * returns the cycle with the given 1-based error id, reading only that
+     * entry when error.log is an indexed ErrorStore
+     *
+     * @param errorId
+     * @return
+     */
+    public static List<Node> readCycle(int errorId) {
+        if (FindingsJournal.isNewerThan(Parameters.ERROR_JOURNAL_FILE, Parameters.ERROR_LOG_FILE)
+                || !ErrorStore.isErrorStore(Parameters.ERROR_LOG_FILE)) {
+            DeadlockCycleInfo cycles = read();
+            return cycles == null ? null : cycles.getCycles().get(errorId - 1);
+        }
+        try {
+            return asCycle(ErrorStore.read(Parameters.ERROR_LOG_FILE, errorId - 1));
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private static DeadlockCycleInfo recover() {
+        // the last igoodlock run did not terminate normally
+        List<Serializable> recovered = FindingsJournal.recover(Parameters.ERROR_JOURNAL_FILE, FindingsJournal.DEADLOCK);
+        DeadlockCycleInfo cycle = new DeadlockCycleInfo(recovered.size());
+        for (Serializable c : recovered) {
+            cycle.cycles.add(asCycle(c));
+        }
+        System.out.println("Recovered " + recovered.size() + " cycles from " + Parameters.ERROR_JOURNAL_FILE);
+        return cycle.rankByContext();
+    }
+
+    // copies a cycle read back from error.log or the journal, checking each node
+    private static List<Node> asCycle(Serializable entry) {
+        List<?> nodes = (List<?>) entry;
+        List<Node> cycle = new ArrayList<Node>(nodes.size());
+        for (Object node : nodes) {
+            cycle.add((Node) node);
+        }
+        return cycle;
+    }
+
+    /**
+     * Returns the distinct cycles of this set, ranked by how often each was
+     * found (most frequent first, ties in order of first occurrence).  Two
+     * cycles are the same if their threads acquire their locks at the same
+     * contexts, whatever the lock objects and whichever thread the cycle
+     * starts at; DeadlockFuzzer only matches contexts, so one run of the
+     * confirmation phase per distinct cycle is enough.  The first occurrence
+     * represents each distinct cycle.
+     */
+    public DeadlockCycleInfo rankByContext() {
+        LinkedHashMap<List<List<Integer>>, List<Node>> distinct = new LinkedHashMap<List<List<Integer>>, List<Node>>();
+        final HashMap<List<List<Integer>>, Integer> counts = new HashMap<List<List<Integer>>, Integer>();
+        for (List<Node> cycle : cycles) {
+            List<List<Integer>> key = canonicalContexts(cycle);
+            Integer count = counts.get(key);
+            if (count == null) {
+                distinct.put(key, cycle);
+                counts.put(key, 1);
+            } else {
+                counts.put(key, count + 1);
+            }
+        }
+        List<List<List<Integer>>> keys = new ArrayList<List<List<Integer>>>(distinct.keySet());
+        // stable, so ties keep the order of first occurrence
+        Collections.sort(keys, new Comparator<List<List<Integer>>>() {
+            public int compare(List<List<Integer>> a, List<List<Integer>> b) {
+                return counts.get(b) - counts.get(a);
+            }
+        });
+        DeadlockCycleInfo ret = new DeadlockCycleInfo(keys.size());
+        for (List<List<Integer>> key : keys) {
+            ret.cycles.add(distinct.get(key));
+        }
+        return ret;
+    }
+
+    /**
+     * the contexts of a cycle, rotated to start at the lexicographically
+     * smallest one
+     */
+    private static List<List<Integer>> canonicalContexts(List<Node> cycle) {
+        List<List<Integer>> contexts = new ArrayList<List<Integer>>(cycle.size());
+        for (Node node : cycle) {
+            contexts.add(new ArrayList<Integer>(node.getContext()));
+        }
+        int n = contexts.size();
+        int best = 0;
+        for (int r = 1; r < n; r++) {
+            for (int i = 0; i < n; i++) {
+                int c = compareContexts(contexts.get((r + i) % n), contexts.get((best + i) % n));
+                if (c < 0) best = r;
+                if (c != 0) break;
+            }
+        }
+        Collections.rotate(contexts, -best);
+        return contexts;
+    }
+
+    private static int compareContexts(List<Integer> a, List<Integer> b) {
+        for (int i = 0; i < a.size() && i < b.size(); i++) {
+            int c = a.get(i).compareTo(b.get(i));
+            if (c != 0) return c;
+        }
+        return a.size() - b.size();
+    }
+
     public int write() {
-        ObjectOutputStream out;
         System.out.println("# of deadlocks detected " + cycles.size());
+        List<Serializable> entries = new ArrayList<Serializable>(cycles.size());
+        for (List<Node> cycle : cycles) {
+            entries.add((Serializable) cycle);
+        }
         try {
-            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(Parameters.ERROR_LOG_FILE)));
-            out.writeObject(this);
-            out.close();
+            ErrorStore.write(Parameters.ERROR_LOG_FILE, entries);
         } catch (IOException e) {
             e.printStackTrace();
         }
         return cycles.size();
     }
 
-    // parkcs: renaming addANode to addALockNode for compatibility with other types of "lock nodes"
-    public void addALockNode(LockNode old) {
-        Node tmp = new Node(old.getContext());
-        current.add(tmp);
-    }
-
     // parkcs: addANode adds a javato.deadlockCommon.Node now
     public void addANode(Node node) {
         current.add(node);
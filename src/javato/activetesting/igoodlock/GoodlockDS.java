@@ -1,9 +1,18 @@
 package javato.activetesting.igoodlock;
 
 
+import javato.activetesting.common.FindingsJournal;
 import javato.activetesting.common.Parameters;
+import javato.activetesting.vc.VectorClock;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Copyright (c) 2007-2008,
@@ -39,73 +48,254 @@ import java.util.LinkedList;
  */
 public class GoodlockDS {
     private LockGraph lockGraph;
+    private LockNodeTable nodes;
     private InterEdges interEdges;
-    private LinkedList<Path> initialSingleNodePaths;
     private LinkedList<Path> deadlocks;
+    private FindingsJournal journal;
+    private int parallelism;
+    // online mode only
+    private LockOrderGraph lockOrder;
+    // start/join clocks of the acquisitions, indexed by lock node: the own
+    // clock of the thread at the last acquisition and a copy of the vector
+    // clock at the first one; null when the analysis does not track them
+    private long[] lastOwnClock;
+    private VectorClock[] firstClock;
 
     public GoodlockDS() {
+        this(Parameters.igoodlockThreads, Parameters.igoodlockOnline);
+    }
+
+    GoodlockDS(int parallelism, boolean online) {
         this.lockGraph = new LockGraph();
-        this.interEdges = new InterEdges();
-        initialSingleNodePaths = new LinkedList<Path>();
+        this.nodes = lockGraph.getNodes();
+        this.interEdges = new InterEdges(nodes);
+        this.parallelism = parallelism;
+        journal = new FindingsJournal(Parameters.ERROR_JOURNAL_FILE);
+        if (online) {
+            lockOrder = new LockOrderGraph();
+            deadlocks = new LinkedList<Path>();
+        }
     }
 
 
     public void lock(int iid, int threadId, int lockId) {
-        Pair<Boolean, LockNode> pair = lockGraph.lock(iid, threadId, lockId);
-        if (pair.fst) {
-            interEdges.addLockNode(pair.snd);
-            Path tmp = new Path();
-            tmp.addFirstNode(pair.snd);
-            initialSingleNodePaths.add(tmp);
+        int node = lockGraph.lock(iid, threadId, lockId);
+        if (node != -1) {
+            interEdges.addLockNode(node);
+            if (lockOrder != null) {
+                findDeadlocksThrough(node);
+            }
+        }
+    }
+
+    /**
+     * Online mode: reports the cycles that the new lock node closes.  A new
+     * node has no children yet, so it can only be in a cycle if the edge from
+     * the lock of its parent to its own lock lies on a lock order cycle, which
+     * LockOrderGraph answers incrementally, and only as the node its thread
+     * blocks at.  Only then are the cycles through the new node searched, from
+     * the paths down to it from each of its ancestors; every cycle is thus
+     * reported once, when its last node appears.
+     */
+    private void findDeadlocksThrough(int node) {
+        int parent = nodes.getParent(node);
+        if (nodes.isRoot(parent) || !lockOrder.addEdge(nodes.getLockIndex(parent), nodes.getLockIndex(node))) {
+            return;
+        }
+        List<LinkedList<Path>> cyclesPerRound = new ArrayList<LinkedList<Path>>();
+        for (int hold = parent; !nodes.isRoot(hold); hold = nodes.getParent(hold)) {
+            LinkedList<Path> bucket = new LinkedList<Path>();
+            bucket.add(Path.through(nodes, hold, node));
+            addRounds(bucket, cyclesPerRound, false);
+        }
+        for (LinkedList<Path> cycles : cyclesPerRound) {
+            for (Path path : cycles) {
+                path = path.canonical();
+                deadlocks.add(path);
+                journalDeadlock(path, "Found deadlock cycle " + deadlocks.size());
+            }
+        }
+    }
+
+    /**
+     * extends the paths of bucket by inter and intra edges, round by round
+     * up to Parameters.deadlockCycleLength rounds, appending the cycles
+     * closed in round i to cyclesPerRound.get(i), from i = 1 on
+     */
+    private void addRounds(LinkedList<Path> bucket, List<LinkedList<Path>> cyclesPerRound, boolean journalCycles) {
+        LinkedList<Path> nextBucket = new LinkedList<Path>();
+        if (cyclesPerRound.isEmpty()) {
+            cyclesPerRound.add(new LinkedList<Path>());
+        }
+        int i = 0;
+        while ((Parameters.deadlockCycleLength == 0 && !bucket.isEmpty()) || i < Parameters.deadlockCycleLength) {
+            i++;
+            if (cyclesPerRound.size() == i) {
+                cyclesPerRound.add(new LinkedList<Path>());
+            }
+            LinkedList<Path> cycles = cyclesPerRound.get(i);
+            int found = cycles.size();
+            nextBucket.clear();
+            for (Path path : bucket) {
+                path.addInterEdges(nextBucket, interEdges);
+            }
+            bucket.clear();
+            for (Path path : nextBucket) {
+                path.addIntraEdges(bucket, cycles);
+            }
+            if (journalCycles) {
+                for (Path path : cycles.subList(found, cycles.size())) {
+                    journalDeadlock(path, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * like lock(iid, threadId, lockId), also stamping the acquisition with the
+     * current vector clock of the thread, which must only reflect start and
+     * join edges and count from 1 for every thread
+     */
+    public void lock(int iid, int threadId, int lockId, VectorClock vc) {
+        lock(iid, threadId, lockId);
+        int node = lockGraph.getCurrent(threadId);
+        if (firstClock == null) {
+            lastOwnClock = new long[64];
+            firstClock = new VectorClock[64];
+        } else if (node >= firstClock.length) {
+            int n = Math.max(2 * firstClock.length, node + 1);
+            lastOwnClock = Arrays.copyOf(lastOwnClock, n);
+            firstClock = Arrays.copyOf(firstClock, n);
+        }
+        if (firstClock[node] == null) {
+            firstClock[node] = new VectorClock(vc);
+        }
+        lastOwnClock[node] = vc.getValue(threadId);
+    }
+
+    /**
+     * returns true iff every acquisition at node a happens before every
+     * acquisition at node b: a's thread had not advanced its clock past the
+     * value that b's thread already knew of it at the first acquisition at b
+     */
+    private boolean happensBefore(int a, int b) {
+        if (firstClock == null || a >= firstClock.length || b >= firstClock.length
+                || firstClock[a] == null || firstClock[b] == null) {
+            return false;
+        }
+        return lastOwnClock[a] <= firstClock[b].getValue(nodes.getThreadId(a));
+    }
+
+    /**
+     * a cycle needs all its threads blocked at their requests at the same
+     * time, which start and join order can rule out
+     */
+    private boolean isFeasible(Path path) {
+        int[] requests = path.getCycleNodes();
+        for (int i = 0; i < requests.length; i++) {
+            for (int j = 0; j < requests.length; j++) {
+                if (i != j && happensBefore(requests[i], requests[j])) {
+                    return false;
+                }
+            }
         }
+        return true;
     }
 
     public void unlock(int iid, int threadId, int lockId) {
         lockGraph.unlock(iid, threadId, lockId);
     }
 
+    /**
+     * Every path of the search starts at one of the initial single node paths
+     * and the buckets of a round are the concatenation of the extensions of
+     * each initial path, so the search is split into one independent task per
+     * initial path.  The cycles of a task are kept per round and merged round
+     * by round in the order of the initial paths, which is exactly the order
+     * in which a single threaded search reports them.
+     */
     private LinkedList<Path> findDeadlocks() {
         if (deadlocks == null) {
             deadlocks = new LinkedList<Path>();
-            LinkedList<Path> bucket = new LinkedList<Path>();
-            LinkedList<Path> nextBucket = new LinkedList<Path>();
+            List<CycleSearch> tasks = new ArrayList<CycleSearch>(nodes.size());
+            for (int node = 0; node < nodes.size(); node++) {
+                if (!nodes.isRoot(node)) {
+                    tasks.add(new CycleSearch(node, true));
+                }
+            }
 
-            //        lockGraph.printGraph(iidToLineMap);
-            //        interEdges.printInterEdges(iidToLineMap);
+            if (parallelism > 1 && tasks.size() > 1) {
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                try {
+                    pool.invoke(new RecursiveAction() {
+                        private static final long serialVersionUID = 1L;
 
-            for (Path path : initialSingleNodePaths) {
-                path.addIntraEdges(bucket, deadlocks);
+                        protected void compute() {
+                            ForkJoinTask.invokeAll(tasks);
+                        }
+                    });
+                } finally {
+                    pool.shutdown();
+                }
+            } else {
+                for (CycleSearch task : tasks) {
+                    task.invoke();
+                }
             }
 
-            //        System.out.println("###################################");
-            //        for (Path path : bucket) {
-            //            path.printPath(iidToLineMap);
-            //        }
-            assert deadlocks.isEmpty();
-            int i = 0;
-            while ((Parameters.deadlockCycleLength == 0 && !bucket.isEmpty()) || i < Parameters.deadlockCycleLength) {
-                i++;
-                nextBucket.clear();
-                for (Path path : bucket) {
-                    path.addInterEdges(nextBucket, interEdges);
+            for (int round = 0; ; round++) {
+                boolean more = false;
+                for (CycleSearch task : tasks) {
+                    if (round < task.cyclesPerRound.size()) {
+                        deadlocks.addAll(task.cyclesPerRound.get(round));
+                        more = true;
+                    }
                 }
-                //            System.out.println("###################################");
-                //            for (Path path : nextBucket) {
-                //                path.printPath(iidToLineMap);
-                //            }
-                bucket.clear();
-                for (Path path : nextBucket) {
-                    path.addIntraEdges(bucket, deadlocks);
-                }
-                //            System.out.println("###################################");
-                //            for (Path path : bucket) {
-                //                path.printPath(iidToLineMap);
-                //            }
+                if (!more) break;
             }
         }
         return deadlocks;
     }
 
+    /**
+     * the search rooted at a single initial path; cyclesPerRound.get(0) holds
+     * the cycles closed by intra edges alone and cyclesPerRound.get(i) the
+     * cycles found after the i-th inter edge
+     */
+    private class CycleSearch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int initialNode;
+        private final boolean journalCycles;
+        private final List<LinkedList<Path>> cyclesPerRound = new ArrayList<LinkedList<Path>>();
+
+        CycleSearch(int initialNode, boolean journalCycles) {
+            this.initialNode = initialNode;
+            this.journalCycles = journalCycles;
+        }
+
+        protected void compute() {
+            LinkedList<Path> bucket = new LinkedList<Path>();
+            LinkedList<Path> cycles = new LinkedList<Path>();
+
+            new Path(nodes, initialNode).addIntraEdges(bucket, cycles);
+            assert cycles.isEmpty();
+            cyclesPerRound.add(cycles);
+            addRounds(bucket, cyclesPerRound, journalCycles);
+        }
+    }
+
+    /**
+     * appends a cycle to the findings journal as soon as it is found, so that
+     * a search cut short by a halt or kill still leaves its cycles behind
+     */
+    private void journalDeadlock(Path path, Object message) {
+        DeadlockCycleInfo tmp = new DeadlockCycleInfo(1);
+        tmp.addACycle();
+        path.addCycleToDeadlockCycleInfo(tmp);
+        journal.append(FindingsJournal.DEADLOCK, (Serializable) tmp.getCycles().get(0), message);
+    }
+
     public void printDeadlocks() {
         if (deadlocks == null)
             findDeadlocks();
@@ -114,15 +304,43 @@ public class GoodlockDS {
         }
     }
 
-    public int dumpDeadlocks() {
+    DeadlockCycleInfo getDeadlockCycleInfo() {
         if (deadlocks == null)
             findDeadlocks();
-        printDeadlocks();
-        DeadlockCycleInfo ret = new DeadlockCycleInfo(deadlocks.size());
+        return toDeadlockCycleInfo(deadlocks);
+    }
+
+    DeadlockCycleInfo getFeasibleDeadlockCycleInfo() {
+        if (deadlocks == null)
+            findDeadlocks();
+        List<Path> feasible = new ArrayList<Path>(deadlocks.size());
         for (Path path : deadlocks) {
+            if (isFeasible(path)) {
+                feasible.add(path);
+            }
+        }
+        return toDeadlockCycleInfo(feasible);
+    }
+
+    private DeadlockCycleInfo toDeadlockCycleInfo(List<Path> paths) {
+        DeadlockCycleInfo ret = new DeadlockCycleInfo(paths.size());
+        for (Path path : paths) {
             ret.addACycle();
             path.addCycleToDeadlockCycleInfo(ret);
         }
-        return ret.write();
+        return ret;
+    }
+
+    public int dumpDeadlocks() {
+        if (deadlocks == null)
+            findDeadlocks();
+        journal.close();
+        printDeadlocks();
+        DeadlockCycleInfo feasible = getFeasibleDeadlockCycleInfo();
+        DeadlockCycleInfo ranked = feasible.rankByContext();
+        System.out.println("# of deadlock cycles found " + deadlocks.size()
+                + ", not ruled out by start/join order " + feasible.getCycles().size()
+                + ", distinct by acquisition context " + ranked.getCycles().size());
+        return ranked.write();
     }
-}
\ No newline at end of file
+}
@@ -1,10 +1,7 @@
 package javato.activetesting.igoodlock;
 
 
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Set;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 /**
  * Copyright (c) 2007-2008,
@@ -39,87 +36,131 @@ import java.util.TreeMap;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 public class InterEdges {
-    // lock -> thread -> lockNode list
-    private TreeMap<Integer, TreeMap<Integer, LinkedList<LockNode>>> map;
+    // lock index -> buckets, one per thread holding the lock in some context,
+    // in ascending thread id order; bucket -> lock nodes in insertion order
+    private LockNodeTable nodes;
+    private int[] lockFirstBucket;
+    private int nBuckets;
+    private int[] bucketThreadId;
+    private int[] bucketThreadIndex;
+    private int[] bucketFirst;
+    private int[] bucketLast;
+    private int[] bucketNext;
+    private int[] nextInBucket;
 
-    public InterEdges() {
-        map = new TreeMap<Integer, TreeMap<Integer, LinkedList<LockNode>>>();
+    public InterEdges(LockNodeTable nodes) {
+        this.nodes = nodes;
+        lockFirstBucket = new int[16];
+        Arrays.fill(lockFirstBucket, -1);
+        bucketThreadId = new int[16];
+        bucketThreadIndex = new int[16];
+        bucketFirst = new int[16];
+        bucketLast = new int[16];
+        bucketNext = new int[16];
+        nextInBucket = new int[64];
     }
 
-    public void addLockNode(LockNode lockNode) {
-        int threadId = lockNode.getThreadId();
-        int lockId = lockNode.getLockId();
-        TreeMap<Integer, LinkedList<LockNode>> threadToLockNodes = map.get(lockId);
-        if (threadToLockNodes == null) {
-            threadToLockNodes = new TreeMap<Integer, LinkedList<LockNode>>();
-            map.put(lockId, threadToLockNodes);
+    public void addLockNode(int lockNode) {
+        int threadId = nodes.getThreadId(lockNode);
+        int lockIndex = nodes.getLockIndex(lockNode);
+        if (lockIndex >= lockFirstBucket.length) {
+            int old = lockFirstBucket.length;
+            lockFirstBucket = Arrays.copyOf(lockFirstBucket, Math.max(2 * old, lockIndex + 1));
+            Arrays.fill(lockFirstBucket, old, lockFirstBucket.length, -1);
         }
-        LinkedList<LockNode> lockNodes = threadToLockNodes.get(threadId);
-        if (lockNodes == null) {
-            lockNodes = new LinkedList<LockNode>();
-            threadToLockNodes.put(threadId, lockNodes);
+        int prev = -1;
+        int b = lockFirstBucket[lockIndex];
+        while (b != -1 && bucketThreadId[b] < threadId) {
+            prev = b;
+            b = bucketNext[b];
         }
-        lockNodes.add(lockNode);
+        if (b == -1 || bucketThreadId[b] != threadId) {
+            int nb = newBucket(threadId, nodes.getThreadIndex(lockNode));
+            bucketNext[nb] = b;
+            if (prev == -1) {
+                lockFirstBucket[lockIndex] = nb;
+            } else {
+                bucketNext[prev] = nb;
+            }
+            b = nb;
+        }
+        if (lockNode >= nextInBucket.length) {
+            nextInBucket = Arrays.copyOf(nextInBucket, Math.max(2 * nextInBucket.length, lockNode + 1));
+        }
+        nextInBucket[lockNode] = -1;
+        if (bucketLast[b] == -1) {
+            bucketFirst[b] = lockNode;
+        } else {
+            nextInBucket[bucketLast[b]] = lockNode;
+        }
+        bucketLast[b] = lockNode;
     }
 
-    public Iterator getIterator(int lockId, Set<Integer> ignoredThreadIds, int minThreadId) {
-        return new InterEdgeIterator(lockId, ignoredThreadIds, minThreadId);
+    private int newBucket(int threadId, int threadIndex) {
+        if (nBuckets == bucketThreadId.length) {
+            int n = 2 * nBuckets;
+            bucketThreadId = Arrays.copyOf(bucketThreadId, n);
+            bucketThreadIndex = Arrays.copyOf(bucketThreadIndex, n);
+            bucketFirst = Arrays.copyOf(bucketFirst, n);
+            bucketLast = Arrays.copyOf(bucketLast, n);
+            bucketNext = Arrays.copyOf(bucketNext, n);
+        }
+        int b = nBuckets++;
+        bucketThreadId[b] = threadId;
+        bucketThreadIndex[b] = threadIndex;
+        bucketFirst[b] = bucketLast[b] = -1;
+        return b;
     }
 
-    private class InterEdgeIterator implements Iterator {
-        private Iterator<Integer> threadIterator;
-        private Iterator<LockNode> lockNodeIterator;
-        private Set<Integer> ignoredThreadIds;
-        private LockNode toReturn;
-        private TreeMap<Integer, LinkedList<LockNode>> threadsToLockNodes;
-        private int minThreadId;
+    /**
+     * the buckets of a lock are visited with
+     * for (b = getFirstBucket(lockIndex); b != -1; b = getNextBucket(b)) and
+     * the lock nodes of a bucket with
+     * for (n = getFirstNode(b); n != -1; n = getNextNode(n))
+     */
+    public int getFirstBucket(int lockIndex) {
+        return lockIndex < lockFirstBucket.length ? lockFirstBucket[lockIndex] : -1;
+    }
 
-        public InterEdgeIterator(int lockId, Set<Integer> ignoredThreadIds, int minThreadId) {
-            threadsToLockNodes = map.get(lockId);
-            threadIterator = threadsToLockNodes.keySet().iterator();
-            this.ignoredThreadIds = ignoredThreadIds;
-            this.minThreadId = minThreadId;
-        }
+    public int getNextBucket(int bucket) {
+        return bucketNext[bucket];
+    }
 
-        public boolean hasNext() {
-            while (true) {
-                while (lockNodeIterator == null && threadIterator.hasNext()) {
-                    Integer threadId = threadIterator.next();
-                    if (threadId > minThreadId && !ignoredThreadIds.contains(threadId)) {
-                        lockNodeIterator = threadsToLockNodes.get(threadId).iterator();
-                    }
-                }
-                if (lockNodeIterator == null)
-                    return false;
-                if (lockNodeIterator.hasNext()) {
-                    toReturn = lockNodeIterator.next();
-                    return true;
-                } else {
-                    lockNodeIterator = null;
-                }
-            }
-        }
+    public int getBucketThreadId(int bucket) {
+        return bucketThreadId[bucket];
+    }
 
-        public LockNode next() {
-            return toReturn;
-        }
+    public int getBucketThreadIndex(int bucket) {
+        return bucketThreadIndex[bucket];
+    }
 
-        public void remove() {
-        }
+    public int getFirstNode(int bucket) {
+        return bucketFirst[bucket];
+    }
+
+    public int getNextNode(int lockNode) {
+        return nextInBucket[lockNode];
     }
 
     public void printInterEdges() {
         System.out.println("Printing InterEdges:");
-        for (Integer lockId : map.keySet()) {
-            TreeMap<Integer, LinkedList<LockNode>> threadToLockNodes = map.get(lockId);
-            System.out.println("Lock " + lockId);
-            for (Integer threadId : threadToLockNodes.keySet()) {
-                System.out.println("Thread " + threadId);
-                LinkedList<LockNode> lockNodes = threadToLockNodes.get(threadId);
-                for (LockNode ln : lockNodes) {
-                    ln.printNode();
+        long[] locks = new long[lockFirstBucket.length];
+        int nLocks = 0;
+        for (int i = 0; i < lockFirstBucket.length; i++) {
+            if (lockFirstBucket[i] != -1) {
+                int lockId = nodes.getLockId(bucketFirst[lockFirstBucket[i]]);
+                locks[nLocks++] = ((long) lockId << 32) | i;
+            }
+        }
+        Arrays.sort(locks, 0, nLocks);
+        for (int j = 0; j < nLocks; j++) {
+            int lockIndex = (int) locks[j];
+            System.out.println("Lock " + (locks[j] >> 32));
+            for (int b = lockFirstBucket[lockIndex]; b != -1; b = bucketNext[b]) {
+                System.out.println("Thread " + bucketThreadId[b]);
+                for (int n = bucketFirst[b]; n != -1; n = nextInBucket[n]) {
+                    nodes.printNode(n);
                 }
-
             }
         }
     }
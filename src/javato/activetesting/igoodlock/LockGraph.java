@@ -2,7 +2,7 @@ package javato.activetesting.igoodlock;
 
 
 import java.util.ArrayList;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 /**
  * Copyright (c) 2007-2008,
@@ -37,32 +37,64 @@ import java.util.TreeMap;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 public class LockGraph {
-    private TreeMap<Integer, LockTree> graph;
+    private LockNodeTable nodes;
+    // thread id -> index into trees
+    private IntIntMap threadIndices;
+    private ArrayList<LockTree> trees;
+    private IntIntMap lockIndices;
 
     public LockGraph() {
-        graph = new TreeMap<Integer, LockTree>();
+        nodes = new LockNodeTable();
+        threadIndices = new IntIntMap();
+        trees = new ArrayList<LockTree>();
+        lockIndices = new IntIntMap();
     }
 
-    public Pair<Boolean, LockNode> lock(int iid, int threadId, int lockId) {
-        LockTree lt = graph.get(threadId);
-        if (lt == null) {
-            lt = new LockTree(threadId);
-            graph.put(threadId, lt);
+    public LockNodeTable getNodes() {
+        return nodes;
+    }
+
+    private LockTree getTree(int threadId) {
+        int threadIndex = threadIndices.get(threadId, -1);
+        if (threadIndex == -1) {
+            threadIndex = trees.size();
+            threadIndices.put(threadId, threadIndex);
+            trees.add(new LockTree(nodes, threadId, threadIndex, lockIndices));
         }
+        return trees.get(threadIndex);
+    }
+
+    /**
+     * returns the node of the new lock context if the lock is acquired in a
+     * context not seen before, -1 otherwise
+     */
+    public int lock(int iid, int threadId, int lockId) {
+        LockTree lt = getTree(threadId);
         boolean isAdded = lt.lock(lockId, iid);
-        LockNode ln = lt.getCurrent();
-        return new Pair<Boolean, LockNode>(isAdded, ln);
+        return isAdded ? lt.getCurrent() : -1;
+    }
+
+    /**
+     * returns the node of the innermost lock held by the thread
+     */
+    public int getCurrent(int threadId) {
+        return getTree(threadId).getCurrent();
     }
 
     public void unlock(int iid, int threadId, int lockId) {
-        LockTree lt = graph.get(threadId);
+        LockTree lt = getTree(threadId);
         lt.unlock(lockId, iid);
     }
 
     public void printGraph(ArrayList<String> iidToLineMap) {
-        for (Integer t : graph.keySet()) {
+        int[] threadIds = new int[trees.size()];
+        for (int i = 0; i < threadIds.length; i++) {
+            threadIds[i] = trees.get(i).getThreadId();
+        }
+        Arrays.sort(threadIds);
+        for (int t : threadIds) {
             System.out.println("---- Thread " + t);
-            graph.get(t).printTree(iidToLineMap);
+            trees.get(threadIndices.get(t, -1)).printTree(iidToLineMap);
         }
     }
 
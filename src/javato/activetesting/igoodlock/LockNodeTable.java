@@ -0,0 +1,216 @@
+package javato.activetesting.igoodlock;
+
+import javato.activetesting.analysis.Observer;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * The nodes of all the lock trees of a LockGraph, stored as parallel int
+ * arrays indexed by node number.  A root node (lock id -1) stands for a
+ * thread holding no lock; every other node is a lock acquired at iid while
+ * holding the locks of its ancestors.  Children are kept in insertion order
+ * through firstChild/nextSibling, and a child is looked up by
+ * (parent, lock id, iid) through an open addressing index, so locking many
+ * distinct objects under one outer lock stays linear.
+ */
+public class LockNodeTable {
+    private int size;
+    private int[] iid;
+    private int[] threadId;
+    private int[] threadIndex;
+    private int[] lockId;
+    private int[] lockIndex;
+    private int[] parent;
+    private int[] firstChild;
+    private int[] lastChild;
+    private int[] nextSibling;
+
+    // (parent, lockId, iid) -> child node, -1 for an empty slot
+    private int[] childIndex;
+    private int nChildren;
+
+    public LockNodeTable() {
+        int n = 64;
+        iid = new int[n];
+        threadId = new int[n];
+        threadIndex = new int[n];
+        lockId = new int[n];
+        lockIndex = new int[n];
+        parent = new int[n];
+        firstChild = new int[n];
+        lastChild = new int[n];
+        nextSibling = new int[n];
+        childIndex = new int[2 * n];
+        Arrays.fill(childIndex, -1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int newNode(int iid, int threadId, int threadIndex, int lockId, int lockIndex, int parent) {
+        if (size == this.iid.length) {
+            int n = size * 2;
+            this.iid = Arrays.copyOf(this.iid, n);
+            this.threadId = Arrays.copyOf(this.threadId, n);
+            this.threadIndex = Arrays.copyOf(this.threadIndex, n);
+            this.lockId = Arrays.copyOf(this.lockId, n);
+            this.lockIndex = Arrays.copyOf(this.lockIndex, n);
+            this.parent = Arrays.copyOf(this.parent, n);
+            firstChild = Arrays.copyOf(firstChild, n);
+            lastChild = Arrays.copyOf(lastChild, n);
+            nextSibling = Arrays.copyOf(nextSibling, n);
+        }
+        int node = size++;
+        this.iid[node] = iid;
+        this.threadId[node] = threadId;
+        this.threadIndex[node] = threadIndex;
+        this.lockId[node] = lockId;
+        this.lockIndex[node] = lockIndex;
+        this.parent[node] = parent;
+        firstChild[node] = lastChild[node] = nextSibling[node] = -1;
+        return node;
+    }
+
+    public int newRoot(int threadId, int threadIndex) {
+        return newNode(-1, threadId, threadIndex, -1, -1, -1);
+    }
+
+    private static int hash(int parent, int lockId, int iid) {
+        return IntIntMap.mix((parent * 31 + lockId) * 31 + iid);
+    }
+
+    public int getChild(int node, int lockId, int iid) {
+        int mask = childIndex.length - 1;
+        for (int i = hash(node, lockId, iid) & mask; childIndex[i] != -1; i = (i + 1) & mask) {
+            int c = childIndex[i];
+            if (parent[c] == node && this.lockId[c] == lockId && this.iid[c] == iid) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    public int addChild(int node, int lockId, int lockIndex, int iid) {
+        int c = newNode(iid, threadId[node], threadIndex[node], lockId, lockIndex, node);
+        if (lastChild[node] == -1) {
+            firstChild[node] = c;
+        } else {
+            nextSibling[lastChild[node]] = c;
+        }
+        lastChild[node] = c;
+        if (2 * (nChildren + 1) > childIndex.length) {
+            int[] old = childIndex;
+            childIndex = new int[old.length * 2];
+            Arrays.fill(childIndex, -1);
+            for (int o : old) {
+                if (o != -1) index(o);
+            }
+        }
+        index(c);
+        nChildren++;
+        return c;
+    }
+
+    private void index(int c) {
+        int mask = childIndex.length - 1;
+        int i = hash(parent[c], lockId[c], iid[c]) & mask;
+        while (childIndex[i] != -1) {
+            i = (i + 1) & mask;
+        }
+        childIndex[i] = c;
+    }
+
+    public int getFirstChild(int node) {
+        return firstChild[node];
+    }
+
+    public int getNextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    public int getParent(int node) {
+        return parent[node];
+    }
+
+    public int getLockId(int node) {
+        return lockId[node];
+    }
+
+    public int getLockIndex(int node) {
+        return lockIndex[node];
+    }
+
+    public int getIid(int node) {
+        return iid[node];
+    }
+
+    public int getThreadId(int node) {
+        return threadId[node];
+    }
+
+    public int getThreadIndex(int node) {
+        return threadIndex[node];
+    }
+
+    public boolean isRoot(int node) {
+        return lockId[node] == -1;
+    }
+
+    public void printContext(int node) {
+        int tmp = node;
+        while (lockId[tmp] != -1) {
+            printNode(tmp);
+            tmp = parent[tmp];
+        }
+    }
+
+    public void printNode(int node) {
+        System.out.println("Lock " + lockId[node] + " held by Thread " + threadId[node]
+                + " at (" + iid[node] + ") " + Observer.getIidToLine(iid[node]));
+    }
+
+    public LinkedList<Integer> getContext(int node) {
+        LinkedList<Integer> ret = new LinkedList<Integer>();
+        int tmp = node;
+        while (lockId[tmp] != -1) {
+            ret.addFirst(iid[tmp]);
+            tmp = parent[tmp];
+        }
+        return ret;
+    }
+}
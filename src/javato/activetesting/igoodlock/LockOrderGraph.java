@@ -0,0 +1,243 @@
+package javato.activetesting.igoodlock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * Lock order graph over the dense lock indices of LockNodeTable, with an edge
+ * from the lock of a node's parent to the lock of the node.  The graph keeps
+ * its strongly connected components merged (union-find) and maintains a
+ * topological order of the components incrementally (Pearce-Kelly), so adding
+ * an edge that is consistent with the current order costs O(1) and only an
+ * edge that goes backwards needs a search bounded by the affected order
+ * interval.  A lock-order cycle, which iGoodlock cycles need, exists through
+ * an edge iff both its locks end up in the same component.
+ */
+public class LockOrderGraph {
+    private int[] comp = new int[16];     // union-find parent of each lock index
+    private int[] ord = new int[16];      // topological index of each component
+    private int[] mark = new int[16];
+    private int epoch = 0;
+    private int size = 0;
+    private ArrayList<HashSet<Integer>> succ = new ArrayList<HashSet<Integer>>();
+    private ArrayList<HashSet<Integer>> pred = new ArrayList<HashSet<Integer>>();
+    private ArrayList<List<Integer>> members = new ArrayList<List<Integer>>();
+
+    private void ensureVertex(int v) {
+        while (size <= v) {
+            if (size == comp.length) {
+                comp = Arrays.copyOf(comp, size * 2);
+                ord = Arrays.copyOf(ord, size * 2);
+                mark = Arrays.copyOf(mark, size * 2);
+            }
+            comp[size] = size;
+            // a new vertex has no edges and can go last in the order
+            ord[size] = size;
+            succ.add(new HashSet<Integer>());
+            pred.add(new HashSet<Integer>());
+            LinkedList<Integer> m = new LinkedList<Integer>();
+            m.add(size);
+            members.add(m);
+            size++;
+        }
+    }
+
+    public int find(int v) {
+        ensureVertex(v);
+        int r = v;
+        while (comp[r] != r) r = comp[r];
+        while (comp[v] != r) {
+            int next = comp[v];
+            comp[v] = r;
+            v = next;
+        }
+        return r;
+    }
+
+    /**
+     * returns the lock indices in the component of v
+     */
+    public List<Integer> getComponent(int v) {
+        return Collections.unmodifiableList(members.get(find(v)));
+    }
+
+    /**
+     * adds the edge from -> to and returns true iff from and to are in the
+     * same strongly connected component afterwards
+     */
+    public boolean addEdge(int from, int to) {
+        int rf = find(from);
+        int rt = find(to);
+        if (rf == rt) return true;
+        if (!succ.get(rf).add(rt)) return false;
+        pred.get(rt).add(rf);
+        if (ord[rf] < ord[rt]) return false;
+
+        int lb = ord[rt], ub = ord[rf];
+        epoch++;
+        ArrayList<Integer> forward = new ArrayList<Integer>();
+        boolean cycle = dfsForward(rt, ub, rf, forward);
+        if (cycle) {
+            // the new component: rt, rf and everything in between that
+            // is reachable from rt and reaches rf
+            epoch++;
+            ArrayList<Integer> backward = new ArrayList<Integer>();
+            dfsBackward(rf, lb, backward);
+            HashSet<Integer> inForward = new HashSet<Integer>(forward);
+            ArrayList<Integer> cycleComps = new ArrayList<Integer>();
+            cycleComps.add(rt);
+            for (Integer c : backward) {
+                if (c == rf || inForward.contains(c)) {
+                    cycleComps.add(c);
+                }
+            }
+            merge(cycleComps);
+            recomputeOrder();
+            return true;
+        }
+        epoch++;
+        ArrayList<Integer> backward = new ArrayList<Integer>();
+        dfsBackward(rf, lb, backward);
+        reorder(backward, forward);
+        return false;
+    }
+
+    private boolean dfsForward(int c, int ub, int target, List<Integer> visited) {
+        mark[c] = epoch;
+        visited.add(c);
+        boolean found = false;
+        for (Integer s : succ.get(c)) {
+            if (s == target) {
+                found = true;
+            } else if (mark[s] != epoch && ord[s] < ub) {
+                found |= dfsForward(s, ub, target, visited);
+            }
+        }
+        return found;
+    }
+
+    private void dfsBackward(int c, int lb, List<Integer> visited) {
+        mark[c] = epoch;
+        visited.add(c);
+        for (Integer p : pred.get(c)) {
+            if (mark[p] != epoch && ord[p] > lb) {
+                dfsBackward(p, lb, visited);
+            }
+        }
+    }
+
+    /**
+     * gives the components that reach the new edge the lowest of the affected
+     * order indices, followed by the components reachable from it
+     */
+    private void reorder(List<Integer> backward, List<Integer> forward) {
+        sortByOrd(backward);
+        sortByOrd(forward);
+        int[] slots = new int[backward.size() + forward.size()];
+        int i = 0;
+        for (Integer c : backward) slots[i++] = ord[c];
+        for (Integer c : forward) slots[i++] = ord[c];
+        Arrays.sort(slots);
+        i = 0;
+        for (Integer c : backward) ord[c] = slots[i++];
+        for (Integer c : forward) ord[c] = slots[i++];
+    }
+
+    private void sortByOrd(List<Integer> l) {
+        Collections.sort(l, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return ord[a] - ord[b];
+            }
+        });
+    }
+
+    private void merge(List<Integer> comps) {
+        int r = comps.get(0);
+        HashSet<Integer> inCycle = new HashSet<Integer>(comps);
+        for (Integer c : comps) {
+            if (c == r) continue;
+            comp[c] = r;
+            members.get(r).addAll(members.get(c));
+            members.set(c, null);
+            for (Integer s : succ.get(c)) {
+                pred.get(s).remove(c);
+                if (!inCycle.contains(s)) {
+                    pred.get(s).add(r);
+                    succ.get(r).add(s);
+                }
+            }
+            for (Integer p : pred.get(c)) {
+                succ.get(p).remove(c);
+                if (!inCycle.contains(p)) {
+                    succ.get(p).add(r);
+                    pred.get(r).add(p);
+                }
+            }
+            succ.set(c, null);
+            pred.set(c, null);
+        }
+        succ.get(r).removeAll(inCycle);
+        pred.get(r).removeAll(inCycle);
+    }
+
+    /**
+     * Kahn's algorithm over the components; only needed after a merge, and
+     * there can be at most as many merges as locks
+     */
+    private void recomputeOrder() {
+        int[] inDegree = new int[size];
+        LinkedList<Integer> ready = new LinkedList<Integer>();
+        for (int c = 0; c < size; c++) {
+            if (comp[c] == c) {
+                inDegree[c] = pred.get(c).size();
+                if (inDegree[c] == 0) ready.add(c);
+            }
+        }
+        int next = 0;
+        while (!ready.isEmpty()) {
+            int c = ready.removeFirst();
+            ord[c] = next++;
+            for (Integer s : succ.get(c)) {
+                if (--inDegree[s] == 0) ready.add(s);
+            }
+        }
+    }
+}
@@ -2,7 +2,6 @@ package javato.activetesting.igoodlock;
 
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 
 /**
  * Copyright (c) 2007-2008,
@@ -37,23 +36,37 @@ import java.util.LinkedList;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 public class LockTree {
-    private LockNode root;
-    private LockNode current;
+    private LockNodeTable nodes;
+    private int root;
+    private int current;
     private int threadId;
+    // lock id -> dense lock index, shared by all the trees of a LockGraph
+    private IntIntMap lockIndices;
 
-    public LockTree(int threadId) {
-        current = root = new LockNode(threadId);
+    public LockTree(LockNodeTable nodes, int threadId, int threadIndex, IntIntMap lockIndices) {
+        this.nodes = nodes;
+        current = root = nodes.newRoot(threadId, threadIndex);
         this.threadId = threadId;
+        this.lockIndices = lockIndices;
     }
 
-    public LockNode getCurrent() {
+    public int getThreadId() {
+        return threadId;
+    }
+
+    public int getCurrent() {
         return current;
     }
 
     public boolean lock(int lockId, int iid) {
-        LockNode child = current.getChild(lockId, iid);
-        if (child == null) {
-            current = current.addChild(lockId, iid);
+        int child = nodes.getChild(current, lockId, iid);
+        if (child == -1) {
+            int lockIndex = lockIndices.get(lockId, -1);
+            if (lockIndex == -1) {
+                lockIndex = lockIndices.size();
+                lockIndices.put(lockId, lockIndex);
+            }
+            current = nodes.addChild(current, lockId, lockIndex, iid);
             return true;
         } else {
             current = child;
@@ -62,20 +75,17 @@ public class LockTree {
     }
 
     public void unlock(int lockId, int iid) {
-        assert current.getLockId() == lockId;
-        current = current.getParent();
-        assert current != null;
+        assert nodes.getLockId(current) == lockId;
+        current = nodes.getParent(current);
+        assert current != -1;
     }
 
-    public void printTree(ArrayList<String> iidToLineMap, LockNode n, String s) {
+    public void printTree(ArrayList<String> iidToLineMap, int n, String s) {
         System.out.print(s);
-        if (n.getLockId() != -1)
-            n.printNode();
-        LinkedList<LockNode> children = n.getChildren();
-        if (children != null) {
-            for (LockNode child : children) {
-                printTree(iidToLineMap, child, s + "    ");
-            }
+        if (!nodes.isRoot(n))
+            nodes.printNode(n);
+        for (int child = nodes.getFirstChild(n); child != -1; child = nodes.getNextSibling(child)) {
+            printTree(iidToLineMap, child, s + "    ");
         }
     }
 
@@ -2,9 +2,9 @@ package javato.activetesting.igoodlock;
 
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.LinkedList;
-import java.util.TreeSet;
 
 /**
  * Copyright (c) 2007-2008,
@@ -38,121 +38,218 @@ import java.util.TreeSet;
  * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
+/**
+ * An immutable path of the lock graph.  A path only stores its last node and
+ * a pointer to the path it extends, so the paths of a search share all their
+ * common prefixes.  The threads involved and the union of the guard locks are
+ * bitsets over the dense thread and lock indices of LockNodeTable; an
+ * extension shares the bitset of its parent whenever it does not change it.
+ */
 public class Path {
-    private LinkedList<LockNode> path;
-    private TreeSet<Integer> threadsInvolved;
-    private TreeSet<Integer> guardLocksUnion;
-    private int minThreadId;
-
-    public Path() {
-        path = new LinkedList<LockNode>();
-        threadsInvolved = new TreeSet<Integer>();
-        guardLocksUnion = new TreeSet<Integer>();
+    private final LockNodeTable nodes;
+    private final int last;
+    private final Path prefix;
+    private final int first;
+    private final int length;
+    private final BitSet threadsInvolved;
+    private final BitSet guardLocksUnion;
+    private final int minThreadId;
+
+    public Path(LockNodeTable nodes, int firstNode) {
+        this.nodes = nodes;
+        last = first = firstNode;
+        prefix = null;
+        length = 1;
+        threadsInvolved = new BitSet();
+        threadsInvolved.set(nodes.getThreadIndex(firstNode));
+        minThreadId = nodes.getThreadId(firstNode);
+        guardLocksUnion = new BitSet();
+        int tmp = firstNode;
+        while (!nodes.isRoot(tmp)) {
+            guardLocksUnion.set(nodes.getLockIndex(tmp));
+            tmp = nodes.getParent(tmp);
+        }
     }
 
-    public Path(Path path) {
-        this.path = new LinkedList<LockNode>(path.path);
-        threadsInvolved = new TreeSet<Integer>(path.threadsInvolved);
-        guardLocksUnion = new TreeSet<Integer>(path.guardLocksUnion);
-        this.minThreadId = path.minThreadId;
+    private Path(Path prefix, int ln, BitSet threadsInvolved, BitSet guardLocksUnion) {
+        this(prefix, ln, threadsInvolved, guardLocksUnion, prefix.minThreadId);
     }
 
-    public void addInterEdges(LinkedList<Path> bucket, InterEdges edges) {
-        LockNode endNode = path.getLast();
-        Iterator interEdgeIterator = edges.getIterator(endNode.getLockId(), threadsInvolved, minThreadId);
-        while (interEdgeIterator.hasNext()) {
-            LockNode ln = (LockNode) interEdgeIterator.next();
-            boolean notInGuards = true;
-            LockNode tmp = ln.getParent();
-            TreeSet<Integer> tmpGuards = new TreeSet<Integer>();
-            while (tmp.getLockId() != -1 && notInGuards) {
-                if (guardLocksUnion.contains(tmp.getLockId())) {
-                    notInGuards = false;
-                } else {
-                    tmpGuards.add(tmp.getLockId());
-                }
-                tmp = tmp.getParent();
+    private Path(Path prefix, int ln, BitSet threadsInvolved, BitSet guardLocksUnion, int minThreadId) {
+        this.nodes = prefix.nodes;
+        this.last = ln;
+        this.prefix = prefix;
+        this.first = prefix.first;
+        this.length = prefix.length + 1;
+        this.threadsInvolved = threadsInvolved;
+        this.guardLocksUnion = guardLocksUnion;
+        this.minThreadId = minThreadId;
+    }
+
+    /**
+     * returns the path from the lock node hold down to its descendant
+     * request, which inter edges may extend to any other thread: the search
+     * for the cycles through request, which are found rotated to start at
+     * hold, see canonical()
+     */
+    public static Path through(LockNodeTable nodes, int hold, int request) {
+        int n = 0;
+        for (int tmp = request; tmp != hold; tmp = nodes.getParent(tmp)) {
+            n++;
+        }
+        int[] chain = new int[n];
+        for (int tmp = request; tmp != hold; tmp = nodes.getParent(tmp)) {
+            chain[--n] = tmp;
+        }
+        Path ret = new Path(nodes, hold);
+        for (int ln : chain) {
+            ret = ret.extend(ln, Integer.MIN_VALUE);
+        }
+        return ret;
+    }
+
+    /**
+     * returns the path extended by ln, a child of the last node or a node of
+     * another thread holding the lock of the last node
+     */
+    private Path extend(int ln, int minThreadId) {
+        BitSet guards = (BitSet) guardLocksUnion.clone();
+        BitSet threads = threadsInvolved;
+        if (nodes.getThreadId(ln) == nodes.getThreadId(last)) {
+            guards.set(nodes.getLockIndex(ln));
+        } else {
+            threads = (BitSet) threadsInvolved.clone();
+            threads.set(nodes.getThreadIndex(ln));
+            for (int tmp = nodes.getParent(ln); !nodes.isRoot(tmp); tmp = nodes.getParent(tmp)) {
+                guards.set(nodes.getLockIndex(tmp));
             }
-            if (notInGuards) {
-                Path tmp2 = new Path(this);
-                tmp2.addNode(ln);
-                tmp2.guardLocksUnion.addAll(tmpGuards);
-                bucket.add(tmp2);
+        }
+        return new Path(this, ln, threads, guards, minThreadId);
+    }
+
+    /**
+     * returns this cycle rotated to start with the part of the thread with
+     * the smallest id, i.e. the path a search from every node finds
+     */
+    public Path canonical() {
+        int[] path = getNodes();
+        int start = 0;
+        for (int i = 1; i < path.length; i++) {
+            if (nodes.getThreadId(path[i]) != nodes.getThreadId(path[i - 1])
+                    && nodes.getThreadId(path[i]) < nodes.getThreadId(path[start])) {
+                start = i;
             }
         }
+        if (start == 0) {
+            return this;
+        }
+        Path ret = new Path(nodes, path[start]);
+        for (int i = 1; i < path.length; i++) {
+            ret = ret.extend(path[(start + i) % path.length], ret.minThreadId);
+        }
+        return ret;
     }
 
-    public void addIntraEdges(LinkedList<Path> bucket, LinkedList<Path> deadlocks) {
-        LockNode endNode = path.getLast();
-        LinkedList<LockNode> children = endNode.getChildren();
-        if (children != null) {
-            LockNode first = path.getFirst();
-            for (LockNode child : children) {
-                if (first.getLockId() == child.getLockId()) {
-                    Path tmp = new Path(this);
-                    tmp.addNode(child);
-                    deadlocks.add(tmp);
-                } else if (!guardLocksUnion.contains(child.getLockId())) {
-                    Path tmp = new Path(this);
-                    tmp.addNode(child);
-                    tmp.guardLocksUnion.add(child.getLockId());
-                    bucket.add(tmp);
-                    tmp.addIntraEdges(bucket, deadlocks);
+    public void addInterEdges(LinkedList<Path> bucket, InterEdges edges) {
+        for (int b = edges.getFirstBucket(nodes.getLockIndex(last)); b != -1; b = edges.getNextBucket(b)) {
+            if (edges.getBucketThreadId(b) <= minThreadId || threadsInvolved.get(edges.getBucketThreadIndex(b))) {
+                continue;
+            }
+            for (int ln = edges.getFirstNode(b); ln != -1; ln = edges.getNextNode(ln)) {
+                boolean notInGuards = true;
+                int tmp = nodes.getParent(ln);
+                while (!nodes.isRoot(tmp) && notInGuards) {
+                    if (guardLocksUnion.get(nodes.getLockIndex(tmp))) {
+                        notInGuards = false;
+                    }
+                    tmp = nodes.getParent(tmp);
+                }
+                if (notInGuards) {
+                    BitSet guards = (BitSet) guardLocksUnion.clone();
+                    tmp = nodes.getParent(ln);
+                    while (!nodes.isRoot(tmp)) {
+                        guards.set(nodes.getLockIndex(tmp));
+                        tmp = nodes.getParent(tmp);
+                    }
+                    BitSet threads = (BitSet) threadsInvolved.clone();
+                    threads.set(nodes.getThreadIndex(ln));
+                    bucket.add(new Path(this, ln, threads, guards));
                 }
             }
         }
     }
 
-    private void addNode(LockNode ln) {
-        path.addLast(ln);
-        threadsInvolved.add(ln.getThreadId());
+    public void addIntraEdges(LinkedList<Path> bucket, LinkedList<Path> deadlocks) {
+        int firstLockId = nodes.getLockId(first);
+        for (int child = nodes.getFirstChild(last); child != -1; child = nodes.getNextSibling(child)) {
+            // child belongs to the thread of last, so threadsInvolved is unchanged
+            if (firstLockId == nodes.getLockId(child)) {
+                deadlocks.add(new Path(this, child, threadsInvolved, guardLocksUnion));
+            } else if (!guardLocksUnion.get(nodes.getLockIndex(child))) {
+                BitSet guards = (BitSet) guardLocksUnion.clone();
+                guards.set(nodes.getLockIndex(child));
+                Path tmp = new Path(this, child, threadsInvolved, guards);
+                bucket.add(tmp);
+                tmp.addIntraEdges(bucket, deadlocks);
+            }
+        }
     }
 
-    public void addFirstNode(LockNode ln) {
-        path.addLast(ln);
-        threadsInvolved.add(ln.getThreadId());
-        minThreadId = ln.getThreadId();
-        LockNode tmp = ln;
-        while (tmp.getLockId() != -1) {
-            guardLocksUnion.add(tmp.getLockId());
-            tmp = tmp.getParent();
+    /**
+     * returns the nodes of this path from the first to the last one
+     */
+    private int[] getNodes() {
+        int[] ret = new int[length];
+        Path tmp = this;
+        for (int i = length - 1; i >= 0; i--) {
+            ret[i] = tmp.last;
+            tmp = tmp.prefix;
         }
-
+        return ret;
     }
 
     public void printPath(ArrayList<String> iidToLineMap) {
         System.out.println("Printing Path:");
-        for (LockNode cur : path) {
-            cur.printNode();
+        for (int cur : getNodes()) {
+            nodes.printNode(cur);
         }
     }
 
     public void printDeadlock() {
-        LockNode old = null;
+        int old = -1;
         System.out.println("##################################### Printing deadlock:");
-        for (LockNode cur : path) {
-            if (old != null && old.getThreadId() != cur.getThreadId()) {
-                System.out.println("******** Thread " + old.getThreadId());
-                old.printContext();
+        for (int cur : getNodes()) {
+            if (old != -1 && nodes.getThreadId(old) != nodes.getThreadId(cur)) {
+                System.out.println("******** Thread " + nodes.getThreadId(old));
+                nodes.printContext(old);
             }
             old = cur;
         }
-        if (old != null) {
-            System.out.println("******** Thread " + old.getThreadId());
-            old.printContext();
+        if (old != -1) {
+            System.out.println("******** Thread " + nodes.getThreadId(old));
+            nodes.printContext(old);
         }
     }
 
-    public void addCycleToDeadlockCycleInfo(DeadlockCycleInfo ret) {
-        LockNode old = null;
-        for (LockNode cur : path) {
-            if (old != null && old.getThreadId() != cur.getThreadId()) {
-                ret.addALockNode(old); // parkcs: addANode renamed to addALockNode
+    /**
+     * returns the last node of each thread of the cycle, i.e. the acquisition
+     * at which that thread blocks
+     */
+    public int[] getCycleNodes() {
+        int[] path = getNodes();
+        int n = 0;
+        int[] ret = new int[path.length];
+        for (int i = 0; i < path.length; i++) {
+            if (i == path.length - 1 || nodes.getThreadId(path[i]) != nodes.getThreadId(path[i + 1])) {
+                ret[n++] = path[i];
             }
-            old = cur;
         }
-        if (old != null) {
-            ret.addALockNode(old); // parkcs: addANode renamed to addALockNode
+        return Arrays.copyOf(ret, n);
+    }
+
+    public void addCycleToDeadlockCycleInfo(DeadlockCycleInfo ret) {
+        for (int node : getCycleNodes()) {
+            ret.addANode(new Node(nodes.getContext(node)));
         }
     }
 }
@@ -0,0 +1,97 @@
+package javato.activetesting.lockset;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * The acquisition context of a thread, i.e. the iids at which it acquired the
+ * locks it holds (outermost first), kept as a stack together with a rolling
+ * hash of every prefix.  lock/unlock are O(1) and do not allocate once the
+ * stack has reached its maximal depth.
+ */
+public class LockContext {
+    private static final long PRIME = 0x100000001B3L;
+    static final long EMPTY_HASH = 0xCBF29CE484222325L;
+
+    private int[] iids = new int[8];
+    private long[] hashes = new long[8];
+    private int depth = 0;
+
+    public static long hash(long prefixHash, int iid) {
+        return (prefixHash ^ iid) * PRIME;
+    }
+
+    /**
+     * the hash a LockContext has after locking at the iids of context in order
+     */
+    public static long hash(List<Integer> context) {
+        long h = EMPTY_HASH;
+        for (Integer iid : context) {
+            h = hash(h, iid);
+        }
+        return h;
+    }
+
+    public void push(int iid) {
+        if (depth == iids.length) {
+            iids = Arrays.copyOf(iids, depth * 2);
+            hashes = Arrays.copyOf(hashes, depth * 2);
+        }
+        hashes[depth] = hash(depth == 0 ? EMPTY_HASH : hashes[depth - 1], iid);
+        iids[depth++] = iid;
+    }
+
+    public void pop() {
+        assert depth > 0;
+        depth--;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public long hash() {
+        return depth == 0 ? EMPTY_HASH : hashes[depth - 1];
+    }
+
+    public boolean matches(int[] context) {
+        if (context.length != depth) return false;
+        for (int i = 0; i < depth; i++) {
+            if (iids[i] != context[i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,127 @@
+package javato.activetesting.lockset;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * A set of acquisition contexts, each mapped to an int, that is looked up
+ * with the rolling hash of a LockContext: a miss costs one probe of an open
+ * addressing table and a hit one comparison of the context.
+ */
+public class LockContextIndex {
+    private long[] keys = new long[16];
+    private int[] slots = new int[16];      // index into contexts/values, -1 if empty
+    private int[][] contexts = new int[8][];
+    private int[] values = new int[8];
+    private int size = 0;
+
+    public LockContextIndex() {
+        Arrays.fill(slots, -1);
+    }
+
+    /**
+     * maps context to value and returns the value context was mapped to
+     * before, or value if it is new
+     */
+    public int putIfAbsent(List<Integer> context, int value) {
+        long h = LockContext.hash(context);
+        int[] c = new int[context.size()];
+        int k = 0;
+        for (Integer iid : context) {
+            c[k++] = iid;
+        }
+        int mask = slots.length - 1;
+        for (int i = mix(h) & mask; slots[i] != -1; i = (i + 1) & mask) {
+            if (keys[i] == h && Arrays.equals(contexts[slots[i]], c)) {
+                return values[slots[i]];
+            }
+        }
+        if (size == contexts.length) {
+            contexts = Arrays.copyOf(contexts, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        contexts[size] = c;
+        values[size] = value;
+        size++;
+        if (2 * size > slots.length) {
+            rehash();
+        } else {
+            insert(h, size - 1);
+        }
+        return value;
+    }
+
+    private void insert(long h, int entry) {
+        int mask = slots.length - 1;
+        int i = mix(h) & mask;
+        while (slots[i] != -1) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = h;
+        slots[i] = entry;
+    }
+
+    private void rehash() {
+        keys = new long[slots.length * 2];
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, -1);
+        for (int e = 0; e < size; e++) {
+            long h = LockContext.EMPTY_HASH;
+            for (int iid : contexts[e]) {
+                h = LockContext.hash(h, iid);
+            }
+            insert(h, e);
+        }
+    }
+
+    /**
+     * returns the value of the current context of ctx, -1 if it is not in the set
+     */
+    public int get(LockContext ctx) {
+        long h = ctx.hash();
+        int mask = slots.length - 1;
+        for (int i = mix(h) & mask; slots[i] != -1; i = (i + 1) & mask) {
+            if (keys[i] == h && ctx.matches(contexts[slots[i]])) {
+                return values[slots[i]];
+            }
+        }
+        return -1;
+    }
+
+    private static int mix(long h) {
+        return (int) (h ^ (h >>> 32));
+    }
+}
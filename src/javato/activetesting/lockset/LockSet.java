@@ -35,19 +35,19 @@ import java.util.TreeSet;
  * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
-public class LockSet extends TreeSet {
+public class LockSet extends TreeSet<Integer> {
     public final static LockSet emptySet = new LockSet();
 
     public LockSet() {
         super();
     }
 
-    public LockSet(Collection ls) {
+    public LockSet(Collection<Integer> ls) {
         super(ls);
     }
 
     public boolean intersects(LockSet ls) {
-        for (Object e : this) {
+        for (Integer e : this) {
             if (ls.contains(e)) return true;
         }
         return false;
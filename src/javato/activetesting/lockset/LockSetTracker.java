@@ -2,12 +2,12 @@ package javato.activetesting.lockset;
 
 
 import javato.activetesting.analysis.Observer;
+import javato.activetesting.igoodlock.IntIntMap;
 import javato.activetesting.igoodlock.Pair;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * Copyright (c) 2007-2008,
@@ -41,19 +41,70 @@ import java.util.TreeMap;
  * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
+
+/**
+ * Tracks the locks held by every thread and the runtime wait-for graph
+ * between them: a thread points to the lock it has requested but not yet
+ * got, and a lock points to the thread owning it.  A real deadlock of any
+ * length is detected on the acquisition that closes it by walking from the
+ * owner of the requested lock, in O(length of the cycle).
+ * <p/>
+ * lockBefore is called before the lock is taken, and the thread may be
+ * paused in between, so a thread is only known to have got the lock it
+ * requested once it reports its next lock or unlock.  Until then it waits
+ * for the lock in the graph, even if the lock is free.
+ */
 public class LockSetTracker {
-    // thread -> list of iids
-    private Map<Integer, LinkedList<Integer>> threadsToIidStack = new TreeMap<Integer, LinkedList<Integer>>();
-    private Map<Integer, LinkedList<Integer>> threadsToLockStack = new TreeMap<Integer, LinkedList<Integer>>();
-    private Map<Integer, Integer> holdsLockToThread = new TreeMap<Integer, Integer>();
-    private Map<Integer, LinkedList<Integer>> reqThreadsToIidStack = new TreeMap<Integer, LinkedList<Integer>>();
-    private Map<Integer, LinkedList<Integer>> reqThreadsToLockStack = new TreeMap<Integer, LinkedList<Integer>>();
-    private Map<Integer, Integer> reqHoldsLockToThread = new TreeMap<Integer, Integer>();
+    private static final int NONE = -1;
+
+    // thread id -> dense index into the per-thread arrays
+    private IntIntMap threadIndex = new IntIntMap();
+    private int[] threadIds = new int[8];
+    // per thread, the iids and locks of its lock stack, outermost first
+    private int[][] iidStacks = new int[8][];
+    private int[][] lockStacks = new int[8][];
+    private int[] depths = new int[8];
+    // per thread, the lock it waits for, NONE if it is not waiting
+    private int[] requested = new int[8];
+    private int nThreads = 0;
+    // lock -> dense index of the owning thread
+    private IntIntMap owners = new IntIntMap();
+
+    // separate graph for requestBefore/unlockAfterReq
+    private LockSetTracker reqTracker;
     boolean isDeadlock = false;
 
-    private int deadlockThreadId, deadlockLockId;
+    private int index(int thread) {
+        int t = threadIndex.get(thread, NONE);
+        if (t == NONE) {
+            t = nThreads++;
+            if (t == threadIds.length) {
+                int n = 2 * t;
+                threadIds = Arrays.copyOf(threadIds, n);
+                iidStacks = Arrays.copyOf(iidStacks, n);
+                lockStacks = Arrays.copyOf(lockStacks, n);
+                depths = Arrays.copyOf(depths, n);
+                requested = Arrays.copyOf(requested, n);
+            }
+            threadIds[t] = thread;
+            iidStacks[t] = new int[4];
+            lockStacks[t] = new int[4];
+            requested[t] = NONE;
+            threadIndex.put(thread, t);
+        }
+        return t;
+    }
 
-    //private ArrayList<String> iidToLineMap = Observer.getIidToLineMap(Parameters.iidToLineMapFile);
+    /**
+     * a thread that reports an event is not blocked, so it owns the lock it
+     * was waiting for
+     */
+    private void settle(int t) {
+        if (requested[t] != NONE) {
+            owners.put(requested[t], t);
+            requested[t] = NONE;
+        }
+    }
 
     /**
      * updates lockset for thread t
@@ -65,70 +116,90 @@ public class LockSetTracker {
      * @return
      */
     public boolean lockBefore(Integer iid, Integer thread, Integer lockId) {
-        LinkedList<Integer> iidStack = threadsToIidStack.get(thread);
-        LinkedList<Integer> lockStack = threadsToLockStack.get(thread);
-        if (iidStack == null) {
-            iidStack = new LinkedList<Integer>();
-            threadsToIidStack.put(thread, iidStack);
+        int t = index(thread);
+        settle(t);
+        int d = depths[t];
+        if (d == lockStacks[t].length) {
+            iidStacks[t] = Arrays.copyOf(iidStacks[t], 2 * d);
+            lockStacks[t] = Arrays.copyOf(lockStacks[t], 2 * d);
         }
-        if (lockStack == null) {
-            lockStack = new LinkedList<Integer>();
-            threadsToLockStack.put(thread, lockStack);
-        }
-        iidStack.addLast(iid);
-        if (!lockStack.isEmpty()) {
-            holdsLockToThread.put(lockStack.getLast(), thread);
+        iidStacks[t][d] = iid;
+        lockStacks[t][d] = lockId;
+        depths[t] = d + 1;
+
+        int owner = owners.get(lockId, NONE);
+        if (owner != t) {
+            requested[t] = lockId;
+            if (owner != NONE && !isDeadlock && isDeadlock(t, owner)) {
+                isDeadlock = true;
+                printCycle(t);
+                System.err.println("##############################################################");
+                System.err.println("Real Deadlock Detected");
+                System.err.println("##############################################################");
+                System.err.println("##############################################################");
+                return true;
+            }
         }
-        lockStack.addLast(lockId);
+        return false;
+    }
 
-        if (!isDeadlock && isDeadlock(thread, lockId)) {
-            isDeadlock = true;
+    /**
+     * returns true iff following the wait-for edges from the owner of the
+     * lock requested by t leads back to t
+     *
+     * @param t     index of the requesting thread
+     * @param owner index of the thread owning the requested lock
+     * @return
+     */
+    private boolean isDeadlock(int t, int owner) {
+        // a cycle not through t would have been reported when it closed;
+        // the bound only guards against looping around one
+        for (int steps = 0; steps < nThreads; steps++) {
+            if (owner == t) return true;
+            int lock = requested[owner];
+            if (lock == NONE) return false;
+            owner = owners.get(lock, NONE);
+            if (owner == NONE) return false;
+        }
+        return false;
+    }
 
-            List<String> locations = new LinkedList<String>();
-            for (Integer tid : threadsToIidStack.keySet()) {
-                if (tid == thread || tid == deadlockThreadId) {
-                    System.out.println("Thread:  (" + tid + ")");
-                    LinkedList<Integer> iids = threadsToIidStack.get(tid);
-                    LinkedList<Integer> locks = threadsToLockStack.get(tid);
-                    int i = 0;
-                    for (Integer lid : locks) {
-                        if (lid == lockId || lid == deadlockLockId) {
-                            Integer iid2 = iids.get(i);
-                            System.out.println("    Lock  (" + locks.get(i) + ") at " + iid2 + " " + Observer.getIidToLine(iid2));
-                            if (i != 0)
-                                locations.add(Observer.getIidToLine(iid2));
-                        }
-                        i++;
-                    }
+    private void printCycle(int t) {
+        // the locks waited for along the cycle, i.e. one lock held by each thread
+        int[] waitedFor = new int[nThreads];
+        int n = 0;
+        for (int cur = t; n == 0 || cur != t; cur = owners.get(requested[cur], NONE)) {
+            waitedFor[n++] = requested[cur];
+        }
+        List<String> locations = new LinkedList<String>();
+        for (int k = 0, cur = t; k < n; k++, cur = owners.get(requested[cur], NONE)) {
+            System.out.println("Thread:  (" + threadIds[cur] + ")");
+            int[] iids = iidStacks[cur];
+            int[] locks = lockStacks[cur];
+            for (int i = 0; i < depths[cur]; i++) {
+                if (i == depths[cur] - 1 || contains(waitedFor, n, locks[i])) {
+                    System.out.println("    Lock  (" + locks[i] + ") at " + iids[i] + " " + Observer.getIidToLine(iids[i]));
+                    if (i != 0)
+                        locations.add(Observer.getIidToLine(iids[i]));
                 }
             }
-            System.out.print("locations: ");
-            for (String lid : locations) 
-                System.out.print(lid + ",");
-            System.out.println("\n");
-
-            // System.out.println("Thread1: " + deadlockThreadId);
-            // System.out.println("Thread1 lock: " + lockId);
-            // System.out.println("Thread1 lock iid: " + threadsToLockStack.get(deadlockThreadId).get(lockId));
-            // System.out.println("Thread2: " + thread);
-            // System.out.println("Thread2 lock: " + deadlockLockId);
-            // System.out.println("Thread2 lock iid: " + threadsToLockStack.get(thread).get( deadlockLockId));
+        }
+        System.out.print("locations: ");
+        for (String lid : locations)
+            System.out.print(lid + ",");
+        System.out.println("\n");
+    }
 
-            System.err.println("##############################################################");
-            System.err.println("Real Deadlock Detected");
-            System.err.println("##############################################################");
-            //printDeadlock();
-            System.err.println("##############################################################");
-            return true;
+    private static boolean contains(int[] a, int n, int x) {
+        for (int i = 0; i < n; i++) {
+            if (a[i] == x) return true;
         }
-        deadlockThreadId = -1;
-        deadlockLockId = -1;
         return false;
     }
-    
-        /**
-     * updates lockset for thread t
-     * returns true iff a deadlock is detected
+
+    /**
+     * same as lockBefore, on a wait-for graph of its own that is only
+     * updated by requestBefore and unlockAfterReq
      *
      * @param thread
      * @param iid
@@ -136,78 +207,23 @@ public class LockSetTracker {
      * @return
      */
     public boolean requestBefore(Integer iid, Integer thread, Integer lockId) {
-        LinkedList<Integer> iidStack = reqThreadsToIidStack.get(thread);
-        LinkedList<Integer> lockStack = reqThreadsToLockStack.get(thread);
-        if (iidStack == null) {
-            iidStack = new LinkedList<Integer>();
-            reqThreadsToIidStack.put(thread, iidStack);
-        }
-        if (lockStack == null) {
-            lockStack = new LinkedList<Integer>();
-            reqThreadsToLockStack.put(thread, lockStack);
+        if (reqTracker == null) {
+            reqTracker = new LockSetTracker();
         }
-        iidStack.addLast(iid);
-        if (!lockStack.isEmpty()) {
-            reqHoldsLockToThread.put(lockStack.getLast(), thread);
-        }
-        lockStack.addLast(lockId);
-
-        if (!isDeadlock && isDeadlockReq(thread, lockId)) {
+        if (!isDeadlock && reqTracker.lockBefore(iid, thread, lockId)) {
             isDeadlock = true;
-
-            List<String> locations = new LinkedList<String>();
-            for (Integer tid : reqThreadsToIidStack.keySet()) {
-                if (tid == thread || tid == deadlockThreadId) {
-                    System.out.println("Thread:  (" + tid + ")");
-                    LinkedList<Integer> iids = reqThreadsToIidStack.get(tid);
-                    LinkedList<Integer> locks = reqThreadsToLockStack.get(tid);
-                    int i = 0;
-                    for (Integer lid : locks) {
-                        if (lid == lockId || lid == deadlockLockId) {
-                            Integer iid2 = iids.get(i);
-                            System.out.println("    Lock  (" + locks.get(i) + ") at " + iid2 + " " + Observer.getIidToLine(iid2));
-                            if (i != 0)
-                                locations.add(Observer.getIidToLine(iid2));
-                        }
-                        i++;
-                    }
-                }
-            }
-            System.out.print("locations: ");
-            for (String lid : locations) 
-                System.out.print(lid + ",");
-            System.out.println("\n");
-
-            // System.out.println("Thread1: " + deadlockThreadId);
-            // System.out.println("Thread1 lock: " + lockId);
-            // System.out.println("Thread1 lock iid: " + threadsToLockStack.get(deadlockThreadId).get(lockId));
-            // System.out.println("Thread2: " + thread);
-            // System.out.println("Thread2 lock: " + deadlockLockId);
-            // System.out.println("Thread2 lock iid: " + threadsToLockStack.get(thread).get( deadlockLockId));
-
-            System.err.println("##############################################################");
-            System.err.println("Real Deadlock Detected");
-            System.err.println("##############################################################");
             printDeadlock();
-            System.err.println("##############################################################");
             return true;
         }
-        deadlockThreadId = -1;
-        deadlockLockId = -1;
         return false;
     }
 
     private void printDeadlock() {
         System.out.println("Thread and lock sets:" + Thread.currentThread());
-        for (Integer tid : threadsToIidStack.keySet()) {
-            System.out.println("Thread:  (" + tid + ")");
-            LinkedList<Integer> iids = threadsToIidStack.get(tid);
-            LinkedList<Integer> locks = threadsToLockStack.get(tid);
-            int i = 0;
-            for (Integer lid : locks) {
-                Integer iid = iids.get(i);
-                System.out.println("    Lock  (" + locks.get(i) + ") at " + Observer.getIidToLine(iid));
-                i++;
+        for (int t = 0; t < nThreads; t++) {
+            System.out.println("Thread:  (" + threadIds[t] + ")");
+            for (int i = 0; i < depths[t]; i++) {
+                System.out.println("    Lock  (" + lockStacks[t][i] + ") at " + Observer.getIidToLine(iidStacks[t][i]));
             }
         }
     }
@@ -218,107 +234,73 @@ public class LockSetTracker {
      * @param thread
      */
     public void unlockAfter(Integer thread) {
-        LinkedList<Integer> iidStack = threadsToIidStack.get(thread);
-        assert iidStack != null;
-        iidStack.removeLast();
-        LinkedList<Integer> lockStack = threadsToLockStack.get(thread);
-        assert (lockStack != null);
-        Integer lockId = lockStack.removeLast();
-        if (thread.equals(holdsLockToThread.get(lockId)))
-            holdsLockToThread.remove(lockId);
+        int t = index(thread);
+        settle(t);
+        assert depths[t] > 0;
+        int d = --depths[t];
+        int lockId = lockStacks[t][d];
+        if (owners.get(lockId, NONE) == t && indexOf(t, lockId) == -1)
+            owners.put(lockId, NONE);
     }
 
-        /**
+    /**
      * unlocks the last acquired lock
      *
      * @param thread
      */
     public void unlockAfterReq(Integer thread) {
-        LinkedList<Integer> reqIidStack = reqThreadsToIidStack.get(thread);
-        assert reqIidStack != null;
-        reqIidStack.removeLast();
-        LinkedList<Integer> reqLockStack = reqThreadsToLockStack.get(thread);
-        assert (reqLockStack != null);
-        Integer reqLockId = reqLockStack.removeLast();
-        if (thread.equals(reqHoldsLockToThread.get(reqLockId)))
-            reqHoldsLockToThread.remove(reqLockId);
+        if (reqTracker != null) {
+            reqTracker.unlockAfter(thread);
+        }
     }
 
+    private int indexOf(int t, int lockId) {
+        int[] locks = lockStacks[t];
+        for (int i = depths[t] - 1; i >= 0; i--) {
+            if (locks[i] == lockId) return i;
+        }
+        return -1;
+    }
+
+    public Pair<Integer,Integer> locationsInvolvedInDeadlock(Integer threadId, Integer lockId) {
+        int t = index(threadId);
+        Integer iid1 = iidStacks[t][depths[t] - 1];
+        int other = owners.get(lockId, NONE);
+        return new Pair<Integer,Integer>(iid1, iidStacks[other][depths[other] - 1]);
+    }
 
     /**
-     * returns true iff the current lockset of all threads implies a deadlock
+     * returns the number of locks currently held or requested by thread
      *
-     * @param threadId
-     * @param lockId
+     * @param thread
      * @return
      */
-    private boolean isDeadlock(Integer threadId, Integer lockId) {
-        Integer tmpThread = threadId;
-        Integer tmpLock = lockId; // what tmpThread intends to acquire
-        //System.out.println("called isDeadlock, threadId: " + threadId + ", lockId:" + lockId);
-        while (true) {
-            Integer oldThread = tmpThread;
-            tmpThread = holdsLockToThread.get(tmpLock);
-            //System.out.println("tmpThread: " + tmpThread + ", oldThread: " + oldThread + ", tmpLock: " + tmpLock);
-            // no one else holds the lock
-            if (tmpThread == null) {
-                return false;
-            }
-            if (tmpThread.equals(oldThread)) {
-                return false;
-            }
-            if (tmpThread.equals(threadId)) {
-                deadlockLockId = tmpLock;
-                //System.out.println("deadlock true tmpThread: " + tmpThread + ", tmpLock: " + tmpLock);
-                return true;
-            }
-            //System.out.println("tmpThread2: " + tmpThread + ", tmpLock2: " + tmpLock);
-            deadlockThreadId = tmpThread;
-
-            tmpLock = threadsToLockStack.get(tmpThread).getLast();
-        }
+    public int getDepth(Integer thread) {
+        int t = threadIndex.get(thread, NONE);
+        return t == NONE ? 0 : depths[t];
     }
 
-        /**
-     * returns true iff the current lockset of all threads implies a deadlock
+    /**
+     * returns the location at which the i-th lock of thread, counting from the
+     * outermost one, is acquired
      *
-     * @param threadId
-     * @param lockId
+     * @param thread
+     * @param i
      * @return
      */
-    private boolean isDeadlockReq(Integer threadId, Integer lockId) {
-        Integer tmpThread = threadId;
-        Integer tmpLock = lockId; // what tmpThread intends to acquire
-        //System.out.println("called isDeadlock, threadId: " + threadId + ", lockId:" + lockId);
-        while (true) {
-            Integer oldThread = tmpThread;
-            tmpThread = reqHoldsLockToThread.get(tmpLock);
-            //System.out.println("tmpThread: " + tmpThread + ", oldThread: " + oldThread + ", tmpLock: " + tmpLock);
-            // no one else holds the lock
-            if (tmpThread == null) {
-                return false;
-            }
-            if (tmpThread.equals(oldThread)) {
-                return false;
-            }
-            if (tmpThread.equals(threadId)) {
-                deadlockLockId = tmpLock;
-                //System.out.println("tmpThread: " + tmpThread + ", tmpLock: " + tmpLock);
-                return true;
-            }
-            //System.out.println("tmpThread2: " + tmpThread + ", tmpLock2: " + tmpLock);
-            deadlockThreadId = tmpThread;
-
-            tmpLock = reqThreadsToLockStack.get(tmpThread).getLast();
-        }
+    public int getIid(Integer thread, int i) {
+        return iidStacks[threadIndex.get(thread, NONE)][i];
     }
 
-    public Pair<Integer,Integer> locationsInvolvedInDeadlock(Integer threadId, Integer lockId) {
-        Integer iid1 = threadsToIidStack.get(threadId).getLast();
-        Integer iid2;
-        Integer otherThread = holdsLockToThread.get(lockId);
-        LinkedList<Integer> iids = threadsToIidStack.get(otherThread);
-        return new Pair<Integer,Integer>(iid1,iids.getLast());
+    /**
+     * returns the i-th lock of thread, counting from the outermost one
+     *
+     * @param thread
+     * @param i
+     * @return
+     */
+    public int getLock(Integer thread, int i) {
+        return lockStacks[threadIndex.get(thread, NONE)][i];
     }
 
     /**
@@ -329,11 +311,14 @@ public class LockSetTracker {
      * @return
      */
     public List<Integer> getLockSetIids(Integer thread) {
-        LinkedList<Integer> ls = threadsToIidStack.get(thread);
-        if (ls == null) {
-            return (new LinkedList<Integer>());
+        List<Integer> ret = new LinkedList<Integer>();
+        int t = threadIndex.get(thread, NONE);
+        if (t != NONE) {
+            for (int i = 0; i < depths[t]; i++) {
+                ret.add(iidStacks[t][i]);
+            }
         }
-        return (new LinkedList<Integer>(ls));
+        return ret;
     }
 
     /**
@@ -344,11 +329,14 @@ public class LockSetTracker {
      * @return
      */
     public List<Integer> getLockList(Integer thread) {
-        LinkedList<Integer> ls = threadsToLockStack.get(thread);
-        if (ls == null) {
-            return (new LinkedList<Integer>());
+        List<Integer> ret = new LinkedList<Integer>();
+        int t = threadIndex.get(thread, NONE);
+        if (t != NONE) {
+            for (int i = 0; i < depths[t]; i++) {
+                ret.add(lockStacks[t][i]);
+            }
         }
-        return (new LinkedList<Integer>(ls));
+        return ret;
     }
 
     /**
@@ -359,17 +347,20 @@ public class LockSetTracker {
      * @return
      */
     public LockSet getLockSet(Integer thread) {
-        LinkedList<Integer> ls = threadsToLockStack.get(thread);
-        if (ls == null) {
+        int t = threadIndex.get(thread, NONE);
+        if (t == NONE || depths[t] == 0) {
             return (new LockSet());
         }
-        return (new LockSet(ls));
+        return (new LockSet(getLockList(thread)));
     }
 
 
     public Integer getLockAcquireIID(Integer thread, Integer lock) {
-        LinkedList<Integer> ls = threadsToLockStack.get(thread);
-        int index = ls.indexOf(lock);
-        return threadsToIidStack.get(thread).get(index);
+        int t = index(thread);
+        int[] locks = lockStacks[t];
+        for (int i = 0; i < depths[t]; i++) {
+            if (locks[i] == lock) return iidStacks[t][i];
+        }
+        return null;
     }
 }
@@ -1,8 +1,14 @@
 package javato.activetesting.racefuzzer;
 
 import javato.activetesting.activechecker.ActiveChecker;
+import javato.activetesting.common.Parameters;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Copyright (c) 2007-2008,
@@ -37,44 +43,184 @@ import java.util.Collection;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 public class RaceChecker extends ActiveChecker {
+    // paused checkers by memory location, and by lock for lock races
+    private static final Map<Long, Breakpoints> pausedOnMemory = new HashMap<Long, Breakpoints>();
+    private static final Map<Long, Breakpoints> pausedOnLock = new HashMap<Long, Breakpoints>();
+
+    // returned by check for a race found between checkers without targets
+    private static final int[] ANY_TARGET = new int[0];
+
     private Long mem;
     private boolean isWrite;
-    private Integer iid;
     public static boolean isRace = false;
     private boolean isLock;
+    // indices of the targeted races the access belongs to, null if any
+    private int[] targets;
+
+    /**
+     * The checkers paused at one location, reads and writes apart, so that
+     * a read finds a racing write without looking at the other reads.
+     */
+    private static class Breakpoints {
+        final List<RaceChecker> reads = new ArrayList<RaceChecker>(2);
+        final List<RaceChecker> writes = new ArrayList<RaceChecker>(2);
+
+        List<RaceChecker> of(boolean isWrite) {
+            return isWrite ? writes : reads;
+        }
+
+        boolean isEmpty() {
+            return reads.isEmpty() && writes.isEmpty();
+        }
+    }
 
     public RaceChecker(Long mem, boolean write, Integer iid, boolean isLock) {
+        super(iid);
         this.mem = mem;
         isWrite = write;
-        this.iid = iid;
         this.isLock = isLock;
     }
 
+    /**
+     * Checks an access of the current thread at a racing iid, i.e. what
+     * (new RaceChecker(mem, isWrite, iid, isLock)).check() does, but allocates
+     * a checker only when the thread is paused.  Must be called holding
+     * ActiveChecker.lock, and followed by ActiveChecker.blockIfRequired().
+     */
+    public static void check(Long mem, boolean isWrite, Integer iid, boolean isLock) {
+        check(mem, isWrite, iid, isLock, null);
+    }
+
+    /**
+     * Same as check(mem, isWrite, iid, isLock) when several races are
+     * targeted at once: two accesses only race if they belong to a common
+     * targeted race, and the thread is not paused if
+     * Parameters.maxPausedThreads threads are already.
+     *
+     * @param targets indices of the targeted races iid belongs to, null if any
+     * @return the indices of the targeted races confirmed by this access,
+     *         empty if targets is null, and null if no race was found
+     */
+    public static int[] check(Long mem, boolean isWrite, Integer iid, boolean isLock, int[] targets) {
+        if (isCheckEnabled(iid)) {
+            return check(null, mem, isWrite, iid, isLock, targets);
+        }
+        return null;
+    }
+
     public void check(Collection<ActiveChecker> checkers) {
-        //System.out.println("check("+mem+","+isWrite+","+iid+")");
-        for (ActiveChecker other : checkers) {
-            RaceChecker rc = (RaceChecker) other;
-            if (rc.mem.equals(mem) && (rc.isWrite || isWrite)) {
-                if (isLock) {
-                    System.err.println("***************************************** Real lock race (e.g. atomicity violation) detected between "
-                            + javato.activetesting.analysis.Observer.getIidToLine(iid) + " and "
-                            + javato.activetesting.analysis.Observer.getIidToLine(rc.iid));
-                } else {
-                    System.err.println("***************************************** Real data race detected between "
-                            + javato.activetesting.analysis.Observer.getIidToLine(iid) + " and "
-                            + javato.activetesting.analysis.Observer.getIidToLine(rc.iid));
-                }
-                isRace = true;
-                if (rand.nextBoolean()) {
-                    block(100);
-                    rc.unblock(0);
-                } else {
-                    block(0);
-                    rc.unblock(100);
+        check(this, mem, isWrite, iid, isLock, targets);
+    }
+
+    /**
+     * pauses the current thread at the access, or lets go of a thread paused
+     * at an access racing with it; self is the checker of the access if
+     * there is one already
+     */
+    private static int[] check(RaceChecker self, Long mem, boolean isWrite, Integer iid, boolean isLock, int[] targets) {
+        RaceChecker rc = findPartner(mem, isWrite, isLock, targets);
+        if (rc != null) {
+            if (isLock) {
+                System.err.println("***************************************** Real lock race (e.g. atomicity violation) detected between "
+                        + javato.activetesting.analysis.Observer.getIidToLine(iid) + " and "
+                        + javato.activetesting.analysis.Observer.getIidToLine(rc.iid));
+            } else {
+                System.err.println("***************************************** Real data race detected between "
+                        + javato.activetesting.analysis.Observer.getIidToLine(iid) + " and "
+                        + javato.activetesting.analysis.Observer.getIidToLine(rc.iid));
+            }
+            isRace = true;
+            if (choose()) {
+                sleepBeforeNextEvent(100);
+                rc.unblock(0);
+            } else {
+                rc.unblock(100);
+                pause(self, mem, isWrite, iid, isLock, targets);
+            }
+            return common(targets, rc.targets);
+        }
+        pause(self, mem, isWrite, iid, isLock, targets);
+        return null;
+    }
+
+    /**
+     * pauses the current thread at the access, where a later racing access
+     * finds it, unless Parameters.maxPausedThreads threads are paused
+     * already
+     */
+    private static void pause(RaceChecker self, Long mem, boolean isWrite, Integer iid, boolean isLock, int[] targets) {
+        if (getBlockedThreadCount() >= Parameters.maxPausedThreads) {
+            return;
+        }
+        RaceChecker checker = checkerOf(self, mem, isWrite, iid, isLock, targets);
+        checker.block(0);
+        Map<Long, Breakpoints> index = isLock ? pausedOnLock : pausedOnMemory;
+        Breakpoints bps = index.get(mem);
+        if (bps == null) {
+            bps = new Breakpoints();
+            index.put(mem, bps);
+        }
+        bps.of(isWrite).add(checker);
+    }
+
+    private static RaceChecker checkerOf(RaceChecker self, Long mem, boolean isWrite, Integer iid, boolean isLock, int[] targets) {
+        if (self != null) return self;
+        RaceChecker checker = new RaceChecker(mem, isWrite, iid, isLock);
+        checker.targets = targets;
+        return checker;
+    }
+
+    /**
+     * returns the indices in both targets, all of the other one if one is
+     * null, i.e. any
+     */
+    private static int[] common(int[] targets1, int[] targets2) {
+        if (targets1 == null) return targets2 == null ? ANY_TARGET : targets2;
+        if (targets2 == null) return targets1;
+        int[] ret = new int[Math.min(targets1.length, targets2.length)];
+        int n = 0;
+        for (int t : targets1) {
+            for (int u : targets2) {
+                if (t == u) {
+                    ret[n++] = t;
+                    break;
                 }
-                return;
             }
         }
-        block(0);
+        return Arrays.copyOf(ret, n);
+    }
+
+    /**
+     * returns a paused checker whose access races with the given one, null
+     * if there is none
+     */
+    private static RaceChecker findPartner(Long mem, boolean isWrite, boolean isLock, int[] targets) {
+        Breakpoints bps = (isLock ? pausedOnLock : pausedOnMemory).get(mem);
+        if (bps == null) return null;
+        RaceChecker rc = findPartner(bps.writes, targets);
+        if (rc == null && isWrite) {
+            rc = findPartner(bps.reads, targets);
+        }
+        return rc;
+    }
+
+    private static RaceChecker findPartner(List<RaceChecker> paused, int[] targets) {
+        for (RaceChecker rc : paused) {
+            if (common(targets, rc.targets).length > 0 || (targets == null && rc.targets == null)) {
+                return rc;
+            }
+        }
+        return null;
+    }
+
+    protected void unblocked() {
+        Map<Long, Breakpoints> index = isLock ? pausedOnLock : pausedOnMemory;
+        Breakpoints bps = index.get(mem);
+        if (bps != null) {
+            bps.of(isWrite).remove(this);
+            if (bps.isEmpty()) {
+                index.remove(mem);
+            }
+        }
     }
 }
@@ -1,7 +1,9 @@
 package javato.activetesting.scheduler;
 
 import javato.activetesting.activechecker.ActiveChecker;
+import javato.activetesting.common.FindingsJournal;
 import javato.activetesting.common.Parameters;
+import javato.activetesting.syncpd.SyncPDChecker;
 
 /**
  * Copyright (c) 2007-2008,
@@ -35,7 +37,17 @@ import javato.activetesting.common.Parameters;
  * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
+/**
+ * The one timer thread of active testing.  ThreadStates breaks the stalls
+ * its counts see as they happen; while a thread is paused, this thread
+ * also looks for stalls the events cannot show, by the states of all
+ * threads every stallCheckerInterval, and breaks livelocks: when no thread
+ * has been paused or let go for livelockCheckerInterval, it lets one go.
+ * It sleeps while no thread is paused.
+ */
 public class StallBreaker extends Thread {
+    private int breakCount = 0;
+
     public StallBreaker() {
         super("ipc1");
         setDaemon(true);
@@ -43,17 +55,34 @@ public class StallBreaker extends Thread {
     }
 
     public void run() {
-        Object lock = new Object();
-        synchronized (lock) {
-            try {
-                while (true) {
-                    lock.wait(Parameters.stallCheckerInterval);
-                    breakAnyStall();
+        try {
+            long livelockDeadline = 0;
+            while (true) {
+                if (ActiveChecker.awaitBlockedThread()) {
+                    livelockDeadline = System.currentTimeMillis() + Parameters.livelockCheckerInterval;
+                }
+                Thread.sleep(Parameters.stallCheckerInterval);
+                ThreadStates.pruneDeadThreads();
+                breakAnyStall();
+                if (System.currentTimeMillis() >= livelockDeadline) {
+                    breakLivelock();
+                    livelockDeadline = System.currentTimeMillis() + Parameters.livelockCheckerInterval;
                 }
-            } catch (InterruptedException e) {
             }
+        } catch (InterruptedException e) {
         }
+    }
 
+    private void breakLivelock() {
+        if (!ActiveChecker.dirty.getAndSet(false)) {
+            boolean flag = ActiveChecker.unblockAThread();
+            if (flag) {
+                breakCount++;
+                if (breakCount % 5 == 0) {
+                    ActiveChecker.reduceProbability();
+                }
+            }
+        }
     }
 
 
@@ -69,6 +98,8 @@ public class StallBreaker extends Thread {
             //        + " isDaemon " + tList[i].isDaemon() + " priority "+tList[i].getPriority());
             if (!tList[i].getName().equals("ipc1")
                     && !tList[i].getName().equals("ipc2")
+                    && !tList[i].getName().equals(FindingsJournal.WRITER_THREAD_NAME)
+                    && !tList[i].getName().equals(SyncPDChecker.CHECKER_THREAD_NAME)
                     && !tList[i].getName().equals("Keep-Alive-Timer")
                     && !tList[i].getName().equals("DestroyJavaVM")) {
 
@@ -106,6 +137,8 @@ public class StallBreaker extends Thread {
         for (int i = 0; i < numThreads; i++) {
             if (!tList[i].getName().equals("ipc1")
                     && !tList[i].getName().equals("ipc2")
+                    && !tList[i].getName().equals(FindingsJournal.WRITER_THREAD_NAME)
+                    && !tList[i].getName().equals(SyncPDChecker.CHECKER_THREAD_NAME)
                     && !tList[i].getName().equals("Keep-Alive-Timer")
                     && !tList[i].getName().equals("DestroyJavaVM")) {
                 count++;
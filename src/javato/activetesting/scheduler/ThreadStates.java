@@ -0,0 +1,384 @@
+package javato.activetesting.scheduler;
+
+import javato.activetesting.activechecker.ActiveChecker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * Counts the application threads that can run, from the events the active
+ * checkers see anyway: start, join, lock, unlock, wait and the pauses of
+ * ActiveChecker.  A thread is blocked from the lockBefore of a monitor owned
+ * by another thread until the owner leaves it, waiting between waitBefore
+ * and waitAfter, and paused while an active checker holds it; it is dead
+ * once joined.  A stall, i.e. a paused thread and no runnable one, is broken
+ * on the event that causes it, without looking at the other threads.
+ * <p/>
+ * The events do not tell a timed wait from an untimed one, nor when a
+ * waiting thread is notified, so while some thread waits a stall is only
+ * possible: it is left to StallBreaker.breakAnyStall, which looks at the
+ * states the JVM reports and counts a timed wait as runnable.
+ * <p/>
+ * A thread blocked or sleeping in code that reports no event, or
+ * terminated without being joined, still counts as runnable; StallBreaker
+ * covers these while a thread is paused.  A thread that neither was started
+ * by an instrumented thread nor has reported an event is not counted.
+ */
+public class ThreadStates {
+    private static final int RUNNABLE = 0, BLOCKED = 1, WAITING = 2, PAUSED = 3, DEAD = 4;
+
+    /**
+     * What the events say about an application thread.
+     */
+    public static class State {
+        final Thread thread;
+        int kind = RUNNABLE;
+        // the monitor the thread is blocked on, or was blocked on before it
+        // was woken up
+        Monitor requested;
+        // reentrancy depth of the monitor released by a wait
+        int savedDepth;
+
+        State(Thread thread) {
+            this.thread = thread;
+        }
+    }
+
+    private static class Monitor {
+        State owner;
+        int depth;
+        List<State> blocked = new ArrayList<State>(2);
+    }
+
+    private static final Object lock = new Object();
+    private static boolean enabled = false;
+    private static final Map<Thread, State> states = new IdentityHashMap<Thread, State>();
+    private static final Map<Integer, Monitor> monitors = new HashMap<Integer, Monitor>();
+    private static int live = 0, runnable = 0, paused = 0, waiting = 0;
+    // what the counts say about a stall
+    private static final int NO_STALL = 0, STALL = 1, MAYBE_STALL = 2;
+    private static int pruneThreshold = 64;
+
+    private static final ThreadLocal<State> current = new ThreadLocal<State>() {
+        protected State initialValue() {
+            synchronized (lock) {
+                return register(Thread.currentThread());
+            }
+        }
+    };
+
+    /**
+     * Starts keeping the counts; called once before the application starts.
+     */
+    public static void enable() {
+        enabled = true;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    private static State register(Thread t) {
+        State s = states.get(t);
+        if (s == null) {
+            s = new State(t);
+            states.put(t, s);
+            live++;
+            runnable++;
+            if (states.size() > pruneThreshold) {
+                pruneDeadThreadsLocked();
+                pruneThreshold = 2 * states.size() + 64;
+            }
+        }
+        return s;
+    }
+
+    private static void setKind(State s, int kind) {
+        if (s.kind == kind) return;
+        if (s.kind == RUNNABLE) runnable--;
+        if (s.kind == PAUSED) paused--;
+        if (s.kind == WAITING) waiting--;
+        if (kind == RUNNABLE) runnable++;
+        if (kind == PAUSED) paused++;
+        if (kind == WAITING) waiting++;
+        if (kind == DEAD) live--;
+        s.kind = kind;
+    }
+
+    /**
+     * the thread of s terminated, possibly still blocked on a monitor when
+     * its last lock event was missed
+     */
+    private static void markDead(State s) {
+        if (s.requested != null) {
+            s.requested.blocked.remove(s);
+            s.requested = null;
+        }
+        setKind(s, DEAD);
+    }
+
+    /**
+     * a thread that reports an event is running, so it owns the monitor it
+     * was blocked on
+     */
+    private static void settle(State s) {
+        if (s.requested != null) {
+            Monitor m = s.requested;
+            m.blocked.remove(s);
+            m.owner = s;
+            m.depth = 1;
+            s.requested = null;
+        }
+        setKind(s, RUNNABLE);
+    }
+
+    private static Monitor monitor(int lockId) {
+        Monitor m = monitors.get(lockId);
+        if (m == null) {
+            m = new Monitor();
+            monitors.put(lockId, m);
+        }
+        return m;
+    }
+
+    /**
+     * the owner left m, so every thread blocked on it may get it
+     */
+    private static void release(int lockId, Monitor m) {
+        m.owner = null;
+        m.depth = 0;
+        for (State s : m.blocked) {
+            if (s.kind != DEAD) {
+                setKind(s, RUNNABLE);
+            }
+        }
+        if (m.blocked.isEmpty()) {
+            monitors.remove(lockId);
+        }
+    }
+
+    private static int stallLocked() {
+        if (paused == 0 || runnable > 0) {
+            return NO_STALL;
+        }
+        return waiting > 0 ? MAYBE_STALL : STALL;
+    }
+
+    private static void breakStallIf(int stall) {
+        if (stall == STALL) {
+            ActiveChecker.unblockAThread();
+        } else if (stall == MAYBE_STALL) {
+            StallBreaker.breakAnyStall();
+        }
+    }
+
+    /**
+     * returns true iff some thread is paused by an active checker and no
+     * application thread can run, not even one that waits
+     */
+    public static boolean isStalled() {
+        synchronized (lock) {
+            return stallLocked() == STALL;
+        }
+    }
+
+    /**
+     * Lets a paused thread go if no application thread can run, asking the
+     * JVM when a waiting thread may be able to.  Called by a thread that is
+     * about to be paused, without ActiveChecker.lock.
+     */
+    public static void breakAnyStall() {
+        int stall;
+        synchronized (lock) {
+            stall = stallLocked();
+        }
+        breakStallIf(stall);
+    }
+
+    /**
+     * returns the number of application threads that have been started and
+     * not seen to terminate, counting the calling thread
+     */
+    public static int getLiveCount() {
+        current.get();
+        synchronized (lock) {
+            return live;
+        }
+    }
+
+    public static int getRunnableCount() {
+        synchronized (lock) {
+            return runnable;
+        }
+    }
+
+    public static int getPausedCount() {
+        synchronized (lock) {
+            return paused;
+        }
+    }
+
+    public static void lockBefore(int lockId) {
+        State s = current.get();
+        int stall;
+        synchronized (lock) {
+            settle(s);
+            Monitor m = monitor(lockId);
+            if (m.owner == null || m.owner == s) {
+                m.owner = s;
+                m.depth++;
+            } else {
+                s.requested = m;
+                m.blocked.add(s);
+                setKind(s, BLOCKED);
+            }
+            stall = stallLocked();
+        }
+        breakStallIf(stall);
+    }
+
+    public static void unlockAfter(int lockId) {
+        State s = current.get();
+        synchronized (lock) {
+            settle(s);
+            Monitor m = monitors.get(lockId);
+            if (m != null && m.owner == s && --m.depth == 0) {
+                release(lockId, m);
+            }
+        }
+    }
+
+    /**
+     * The wait may be timed, so the current thread may run again on its
+     * own: a stall it leaves behind is left to the periodic StallBreaker.
+     */
+    public static void waitBefore(int lockId) {
+        State s = current.get();
+        synchronized (lock) {
+            settle(s);
+            Monitor m = monitors.get(lockId);
+            s.savedDepth = 1;
+            if (m != null && m.owner == s) {
+                s.savedDepth = m.depth;
+                release(lockId, m);
+            }
+            setKind(s, WAITING);
+        }
+    }
+
+    public static void waitAfter(int lockId) {
+        State s = current.get();
+        synchronized (lock) {
+            settle(s);
+            Monitor m = monitor(lockId);
+            m.owner = s;
+            m.depth = s.savedDepth;
+        }
+    }
+
+    public static void startBefore(Thread child) {
+        State s = current.get();
+        synchronized (lock) {
+            settle(s);
+            register(child);
+        }
+    }
+
+    public static void joinAfter(Thread child) {
+        State s = current.get();
+        synchronized (lock) {
+            settle(s);
+            // a timed join may return before the child terminates
+            if (child.getState() == Thread.State.TERMINATED) {
+                State c = states.remove(child);
+                if (c != null) {
+                    markDead(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Called by the current thread when an active checker pauses it.
+     *
+     * @return the state to hand to {@link #resume(State)}
+     */
+    public static State pause() {
+        State s = current.get();
+        synchronized (lock) {
+            settle(s);
+            setKind(s, PAUSED);
+        }
+        return s;
+    }
+
+    /**
+     * Called when the thread of s is let go by an active checker.
+     */
+    public static void resume(State s) {
+        synchronized (lock) {
+            if (s.kind == PAUSED) {
+                setKind(s, RUNNABLE);
+            }
+        }
+    }
+
+    /**
+     * Marks the threads that terminated without being joined.
+     */
+    public static void pruneDeadThreads() {
+        int stall;
+        synchronized (lock) {
+            pruneDeadThreadsLocked();
+            stall = stallLocked();
+        }
+        breakStallIf(stall);
+    }
+
+    private static void pruneDeadThreadsLocked() {
+        for (Iterator<State> it = states.values().iterator(); it.hasNext();) {
+            State s = it.next();
+            if (s.thread.getState() == Thread.State.TERMINATED) {
+                markDead(s);
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package javato.activetesting.syncpd;
+
+import java.util.Arrays;
+
+import javato.activetesting.syncpd.util.VectorClock;
+
+/**
+ * The critical sections of one thread on one lock, in the order in which
+ * the thread entered them.  The acquire clocks of a thread grow with its
+ * own component, and an ideal contains an event of the thread iff it
+ * contains the thread's component of the event's clock, so the last
+ * critical section entered inside an ideal is found by a binary search on
+ * that component.
+ */
+public class CSHistory {
+	final int threadId;	// index of the owner in the vector clocks
+	private int size = 0;
+	private int[] acquireIds = new int[4];
+	private int[] localClocks = new int[4];
+	private VectorClock[] acquires = new VectorClock[4];
+	private VectorClock[] releases = new VectorClock[4];
+
+	public CSHistory(int threadId) {
+		this.threadId = threadId;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void addAcquire(int acquireId, VectorClock acquire) {
+		if (size == acquireIds.length) {
+			acquireIds = Arrays.copyOf(acquireIds, 2 * size);
+			localClocks = Arrays.copyOf(localClocks, 2 * size);
+			acquires = Arrays.copyOf(acquires, 2 * size);
+			releases = Arrays.copyOf(releases, 2 * size);
+		}
+		acquireIds[size] = acquireId;
+		localClocks[size] = acquire.getClockIndex(threadId);
+		acquires[size] = acquire;
+		releases[size] = null;
+		size++;
+	}
+
+	public void setLastRelease(VectorClock release) {
+		releases[size - 1] = release;
+	}
+
+	/**
+	 * returns true iff the last critical section has not been left yet
+	 */
+	public boolean isOpen() {
+		return size > 0 && releases[size - 1] == null;
+	}
+
+	/**
+	 * returns the index of the last critical section whose acquire is in the
+	 * ideal U, -1 if there is none
+	 */
+	public int maxLowerBound(VectorClock U) {
+		int u = U.getClockIndex(threadId);
+		int lo = 0, hi = size - 1, ret = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (localClocks[mid] <= u) {
+				ret = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * forgets the critical sections before the i-th one
+	 */
+	public void dropBefore(int i) {
+		if (i <= 0)
+			return;
+		size -= i;
+		System.arraycopy(acquireIds, i, acquireIds, 0, size);
+		System.arraycopy(localClocks, i, localClocks, 0, size);
+		System.arraycopy(acquires, i, acquires, 0, size);
+		System.arraycopy(releases, i, releases, 0, size);
+		Arrays.fill(acquires, size, size + i, null);
+		Arrays.fill(releases, size, size + i, null);
+	}
+
+	public int getAcquireId(int i) {
+		return acquireIds[i];
+	}
+
+	public VectorClock getAcquire(int i) {
+		return acquires[i];
+	}
+
+	/**
+	 * returns the release clock of the i-th critical section, null if it is
+	 * still open
+	 */
+	public VectorClock getRelease(int i) {
+		return releases[i];
+	}
+}
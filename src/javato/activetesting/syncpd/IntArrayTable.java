@@ -0,0 +1,109 @@
+package javato.activetesting.syncpd;
+
+import java.util.Arrays;
+
+/**
+ * Interns int arrays, such as sorted lock sets, as dense int ids, so that
+ * equal arrays are stored once and compared by id.
+ */
+public class IntArrayTable {
+	private int[][] arrays = new int[16][];
+	private int[] hashes = new int[16];
+	private int size = 0;
+	private int[] slots = new int[32];	// id + 1, 0 if empty
+
+	public int size() {
+		return size;
+	}
+
+	public int[] get(int id) {
+		return arrays[id];
+	}
+
+	/**
+	 * returns the id of the first len elements of a, -1 if they have not been interned
+	 */
+	public int find(int[] a, int len) {
+		int h = hash(a, len);
+		int mask = slots.length - 1;
+		for (int i = h & mask; slots[i] != 0; i = (i + 1) & mask) {
+			int id = slots[i] - 1;
+			if (hashes[id] == h && equals(arrays[id], a, len))
+				return id;
+		}
+		return -1;
+	}
+
+	/**
+	 * returns the id of the first len elements of a, interning a copy of them if needed
+	 */
+	public int intern(int[] a, int len) {
+		int id = find(a, len);
+		if (id != -1)
+			return id;
+		if (size == arrays.length) {
+			arrays = Arrays.copyOf(arrays, 2 * size);
+			hashes = Arrays.copyOf(hashes, 2 * size);
+		}
+		id = size++;
+		arrays[id] = Arrays.copyOf(a, len);
+		hashes[id] = hash(a, len);
+		if (2 * size > slots.length) {
+			slots = new int[2 * slots.length];
+			for (int j = 0; j < size; j++)
+				insert(j);
+		} else {
+			insert(id);
+		}
+		return id;
+	}
+
+	private void insert(int id) {
+		int mask = slots.length - 1;
+		int i = hashes[id] & mask;
+		while (slots[i] != 0)
+			i = (i + 1) & mask;
+		slots[i] = id + 1;
+	}
+
+	private static boolean equals(int[] a, int[] b, int len) {
+		if (a.length != len)
+			return false;
+		for (int i = 0; i < len; i++) {
+			if (a[i] != b[i])
+				return false;
+		}
+		return true;
+	}
+
+	private static int hash(int[] a, int len) {
+		int h = 1;
+		for (int i = 0; i < len; i++)
+			h = 31 * h + a[i];
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * returns true iff the sorted array a contains x
+	 */
+	public static boolean contains(int[] a, int x) {
+		return Arrays.binarySearch(a, x) >= 0;
+	}
+
+	/**
+	 * returns true iff the sorted arrays a and b have no element in common
+	 */
+	public static boolean disjoint(int[] a, int[] b) {
+		int i = 0, j = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] == b[j])
+				return false;
+			if (a[i] < b[j])
+				i++;
+			else
+				j++;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,75 @@
+package javato.activetesting.syncpd;
+
+/**
+ * Open addressing hash map from long keys, e.g. two ints packed with
+ * {@link #pack(int, int)}, to objects, without boxing the keys.
+ */
+public class LongMap<V> {
+	private long[] keys = new long[16];
+	private V[] values = newArray(16);
+	private boolean[] used = new boolean[16];
+	private int size = 0;
+
+	public static long pack(int high, int low) {
+		return ((long) high << 32) | (low & 0xFFFFFFFFL);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public V get(long key) {
+		int mask = keys.length - 1;
+		for (int i = mix(key) & mask; used[i]; i = (i + 1) & mask) {
+			if (keys[i] == key)
+				return values[i];
+		}
+		return null;
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	public void put(long key, V value) {
+		if (2 * (size + 1) > keys.length)
+			grow();
+		int mask = keys.length - 1;
+		int i = mix(key) & mask;
+		while (used[i]) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		used[i] = true;
+		keys[i] = key;
+		values[i] = value;
+		size++;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		V[] oldValues = values;
+		boolean[] oldUsed = used;
+		keys = new long[2 * oldKeys.length];
+		values = newArray(2 * oldKeys.length);
+		used = new boolean[2 * oldKeys.length];
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldUsed[i])
+				put(oldKeys[i], oldValues[i]);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> V[] newArray(int n) {
+		return (V[]) new Object[n];
+	}
+
+	private static int mix(long key) {
+		key *= 0x9E3779B97F4A7C15L;
+		return (int) (key ^ (key >>> 32));
+	}
+}
@@ -0,0 +1,189 @@
+package javato.activetesting.syncpd;
+
+/**
+ * Runs the SyncPD bookkeeping and deadlock pattern checks of SPDOnline on a
+ * thread of its own.  The instrumented threads only queue their events; the
+ * checker applies them to the SyncPDState in queue order, so every check
+ * sees the state as it was when its acquisition was queued.
+ * <p/>
+ * The queue is a ring of CAPACITY events kept in primitive arrays, so
+ * queueing allocates nothing, and a thread that finds it full waits for
+ * the checker to catch up.  A read or write queued while the checker is
+ * idle is applied at once by the queueing thread instead: it only updates
+ * an epoch, and no earlier event is left to apply before it.
+ */
+public class SyncPDChecker {
+	// name is ignored by the stall breakers when counting application threads
+	public static final String CHECKER_THREAD_NAME = "ipc4";
+	public static final int CAPACITY = 1 << 14;
+
+	private static final int ACQUIRE = 0, RELEASE = 1, START = 2, JOIN = 3, READ = 4, WRITE = 5, CLOSE = 6;
+
+	// the ring, guarded by this; the checker reads the events it has taken
+	// without the lock, as they are not overwritten until it gives them back
+	private final int[] kinds = new int[CAPACITY];
+	private final int[] threads = new int[CAPACITY];
+	private final int[] targets = new int[CAPACITY];	// lock or child thread
+	private final int[] iids = new int[CAPACITY];
+	private final long[] memories = new long[CAPACITY];
+	private int head = 0, count = 0;
+	private boolean closed = false;
+
+	private final SyncPDState state;
+	private final int maxLength, budget;
+	private final Thread checker;
+	private int numAcqEvents = 0;
+
+	/**
+	 * @param state     the state the events are applied to, owned by the checker from now on
+	 * @param maxLength longest deadlock pattern looked for
+	 * @param budget    SP-ideal computations per acquisition for patterns longer than two
+	 */
+	public SyncPDChecker(SyncPDState state, int maxLength, int budget) {
+		this.state = state;
+		this.maxLength = maxLength;
+		this.budget = budget;
+		checker = new Thread(CHECKER_THREAD_NAME) {
+			public void run() {
+				drain();
+			}
+		};
+		checker.setDaemon(true);
+		checker.start();
+	}
+
+	public void acquire(int iid, int thread, int lock) {
+		put(ACQUIRE, thread, lock, iid, 0L);
+	}
+
+	public void release(int thread, int lock) {
+		put(RELEASE, thread, lock, 0, 0L);
+	}
+
+	public void start(int parent, int child) {
+		put(START, parent, child, 0, 0L);
+	}
+
+	public void join(int parent, int child) {
+		put(JOIN, parent, child, 0, 0L);
+	}
+
+	public synchronized void read(int thread, long memory) {
+		if (count == 0 && !closed)
+			state.read(thread, memory);
+		else
+			put(READ, thread, 0, 0, memory);
+	}
+
+	public synchronized void write(int thread, long memory) {
+		if (count == 0 && !closed)
+			state.write(thread, memory);
+		else
+			put(WRITE, thread, 0, 0, memory);
+	}
+
+	/**
+	 * Waits until all queued events have been checked and stops the checker.
+	 * Later events are dropped.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (closed)
+				return;
+			put(CLOSE, 0, 0, 0, 0L);
+			closed = true;
+		}
+		try {
+			checker.join();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private synchronized void put(int kind, int thread, int target, int iid, long memory) {
+		if (closed)
+			return;
+		boolean interrupted = false;
+		while (count == CAPACITY) {
+			try {
+				// timed, so that the stall breakers count the thread as runnable
+				wait(10);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		int i = (head + count) & (CAPACITY - 1);
+		kinds[i] = kind;
+		threads[i] = thread;
+		targets[i] = target;
+		iids[i] = iid;
+		memories[i] = memory;
+		if (count++ == 0)
+			notifyAll();
+	}
+
+	private void drain() {
+		try {
+			while (true) {
+				int first, n;
+				synchronized (this) {
+					while (count == 0)
+						wait();
+					first = head;
+					n = count;
+				}
+				for (int k = 0; k < n; k++) {
+					int i = (first + k) & (CAPACITY - 1);
+					if (kinds[i] == CLOSE)
+						return;
+					process(i);
+				}
+				synchronized (this) {
+					head = (first + n) & (CAPACITY - 1);
+					count -= n;
+					notifyAll();
+				}
+			}
+		} catch (InterruptedException e) {
+		}
+	}
+
+	private void process(int i) {
+		int thread = threads[i], target = targets[i], iid = iids[i];
+		switch (kinds[i]) {
+		case ACQUIRE:
+			state.addThread(thread);
+			int vertexIndex = state.keepCycleBooks(thread, target, iid);
+			if (vertexIndex >= 0) {
+				boolean foundDeadlock = state.findDeadlocks(vertexIndex, thread, target, iid);
+				if (!foundDeadlock && maxLength > 2)
+					state.findLongDeadlocks(vertexIndex, thread, target, iid, maxLength, budget);
+			}
+			state.incClockThread(thread);
+			state.addToLocksHeld(thread, target);
+			state.addAcquireToHist(thread, target, numAcqEvents++);
+			break;
+		case RELEASE:
+			state.incClockThread(thread);
+			state.updateRelease(thread, target);
+			state.removeLockFromLocksHeld(thread, target);
+			break;
+		case START:
+			state.addThread(thread);
+			state.incClockThread(thread);
+			state.addThread(thread, target);
+			break;
+		case JOIN:
+			state.join(thread, target);
+			break;
+		case READ:
+			state.read(thread, memories[i]);
+			break;
+		case WRITE:
+			state.write(thread, memories[i]);
+			break;
+		}
+	}
+}
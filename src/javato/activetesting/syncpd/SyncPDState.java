@@ -1,168 +1,286 @@
 package javato.activetesting.syncpd;
 
-import java.util.Map;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
-
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.HashMultiset;
-import com.google.common.collect.Multiset;
-import com.google.common.collect.Table;
-
-import javato.activetesting.syncpd.util.Pair;
-import javato.activetesting.syncpd.util.Quaternary;
-import javato.activetesting.syncpd.util.Triplet;
 
 import javato.activetesting.syncpd.util.VectorClock;
 import javato.activetesting.analysis.ObserverForActiveTesting;
+import javato.activetesting.common.Parameters;
+import javato.activetesting.igoodlock.IntIntMap;
 
 
 public class SyncPDState {
 
 	public int uniqueDeadlockCount, numThreads, numLocks, numVariables;
 
-	public Set<Integer> threadSet, lockSet;
-	private HashMap<Integer, Integer> threadMap;
-	
-	private Set<Set<Quaternary<Integer, Integer, HashSet<Integer>, Integer>>> declaredDeadlocks;
-	private Map<Integer, VectorClock> clockThread; // threadIndex -> VC
-	public Map<Long, VectorClock> lastWriteVariable; // variableIndex -> VC
-	public Map<Long, Integer> variableToLastWriteThread; // variableIndex -> threadIndex
-
-	private Table<Integer, Integer, LinkedList<Triplet<Integer, VectorClock, VectorClock>>> csHist;
-	private Table<Integer, Integer, Integer> reentrantLockCounter;
-	private Map<Integer, Multiset<Integer>> locksHeld;
-	
-	private Map<Set<Quaternary<Integer, Integer, HashSet<Integer>, Integer>>, VectorClock> vertexSetToSPIdeal; 
-	private Map<Quaternary<Integer, Integer, HashSet<Integer>, Integer>, Integer> vertexToIndex;
-	private Map<Integer, List<Pair<VectorClock, VectorClock>>> vertexToVCs;
-	private Map<Integer, Set<Quaternary<Integer, Integer, HashSet<Integer>, Integer>>> verticesHoldingLock; 
-	private Table<Integer, Integer, Integer> vertexToEventQueueIndex; 
+	private IntIntMap threadMap = new IntIntMap(); // thread -> threadId
+	private IntIntMap lockMap = new IntIntMap(); // lock -> lockIndex
+
+	// per threadId
+	private int[] threadOfId = new int[8];
+	private VectorClock[] clockThread = new VectorClock[8];
+	private boolean[] joined = new boolean[8];
+	private int[][] locksHeld = new int[8][]; // sorted, without repetition
+	private int[][] lockHeldCounts = new int[8][];
+	private int[] locksHeldSize = new int[8];
+	private int[] locksHeldId = new int[8]; // interned locksHeld, -1 if not interned yet
+	private int[][] locksOfThreadId = new int[8][]; // lockIndices with a history of the thread
+	private int[] locksOfThreadIdSize = new int[8];
+	private VectorClock[] writeClock = new VectorClock[8]; // clock shared by the writes of the thread, null if stale
+
+	// per lockIndex
+	private int[] lockOfIndex = new int[8];
+	private List<List<CSHistory>> csHist = new ArrayList<List<CSHistory>>();
+	private int[][] verticesHoldingLock = new int[8][];
+	private int[] verticesHoldingLockSize = new int[8];
+
+	private LongMap<CSHistory> threadLockToCSHist = new LongMap<CSHistory>(); // (threadId, lockIndex) -> history
+	private IntArrayTable lockSets = new IntArrayTable();
+	private VertexTable vertices = new VertexTable();
+	private boolean[] registered = new boolean[16]; // vertex is in verticesHoldingLock
+
+	private LongMap<Boolean> declaredDeadlocks = new LongMap<Boolean>(); // pairs of vertices
+	private IntArrayTable declaredCycles = new IntArrayTable(); // sorted vertices of longer cycles
+	private LongMap<VectorClock> vertexPairToSPIdeal = new LongMap<VectorClock>();
+
+	private LongMap<LastWrite> lastWrites; // variable -> last write
+
+	private int gcInterval, acquiresSinceGC;
+
+	// worklist of computeSPIdeal, a ring of lockIndices
+	private int[] worklist = new int[8];
+	private boolean[] queued = new boolean[8];
+	private int worklistHead, worklistSize;
 
 	public SyncPDState() {
+		this(Parameters.syncpdGcInterval);
+	}
+
+	public SyncPDState(int gcInterval) {
 		uniqueDeadlockCount = numThreads = numLocks = numVariables = 0;
+		this.gcInterval = gcInterval;
 		initDS();
 	}
 
 	public void initDS() {
-		this.clockThread = new HashMap<Integer, VectorClock>();
-
-		this.threadSet = new HashSet<Integer>();
-		this.threadMap = new HashMap<Integer, Integer>();
-		this.lockSet = new HashSet<Integer>();
-
-		// initialize lastWriteVariable
-		this.lastWriteVariable = new HashMap<Long, VectorClock>();
-
-		// initialize csHist
-		this.csHist = HashBasedTable.create();
-		
-		// initialize locksHeld and numAcquriesPerThread
-		this.locksHeld = new HashMap<Integer, Multiset<Integer>>();
-		
-		// initialize lockHistory
-		this.reentrantLockCounter = HashBasedTable.create();
-		this.declaredDeadlocks = new HashSet<Set<Quaternary<Integer, Integer, HashSet<Integer>, Integer>>>();
-		this.variableToLastWriteThread = new HashMap<Long, Integer>();
-		
-		this.vertexToIndex = new HashMap();
-		this.vertexToVCs = new HashMap();
-		this.vertexToEventQueueIndex = HashBasedTable.create();
-		this.verticesHoldingLock = new HashMap();
-		this.vertexSetToSPIdeal = new HashMap();
-	}
-	
-	public void addAcquireToHist(Integer t, Integer l, int acquireId){
-		if (!lockSet.contains(l))
-			lockSet.add(l);
+		this.lastWrites = new LongMap<LastWrite>();
+		this.acquiresSinceGC = 0;
+	}
 
-		if (!csHist.contains(t, l)) {
-			this.csHist.put(t, l, new LinkedList<Triplet<Integer, VectorClock, VectorClock>>());
+	private int getLockIndex(int l) {
+		int li = lockMap.get(l, -1);
+		if (li == -1) {
+			li = numLocks++;
+			if (li == lockOfIndex.length) {
+				int n = 2 * li;
+				lockOfIndex = Arrays.copyOf(lockOfIndex, n);
+				verticesHoldingLock = Arrays.copyOf(verticesHoldingLock, n);
+				verticesHoldingLockSize = Arrays.copyOf(verticesHoldingLockSize, n);
+				worklist = new int[n];
+				queued = new boolean[n];
+			}
+			lockOfIndex[li] = l;
+			csHist.add(new ArrayList<CSHistory>(2));
+			verticesHoldingLock[li] = new int[4];
+			lockMap.put(l, li);
 		}
+		return li;
+	}
 
-		if (this.csHist.get(t, l).size() > 0 && this.csHist.get(t, l).getLast().third == null) {
-			if (this.reentrantLockCounter.contains(t, l)) {
-				this.reentrantLockCounter.put(t, l, this.reentrantLockCounter.get(t, l) + 1);
+	public void addAcquireToHist(Integer t, Integer l, int acquireId){
+		CSHistory history = getCSHistory(getThreadId(t), getLockIndex(l));
+		if (!history.isOpen()) {
+			VectorClock copyClock = new VectorClock(this.clockThread[getThreadId(t)]);
+			history.addAcquire(acquireId, copyClock);
+		}
+		if (gcInterval > 0 && ++acquiresSinceGC >= gcInterval) {
+			collectGarbage();
+			acquiresSinceGC = 0;
+		}
+	}
+
+	/**
+	 * a joined thread does no more acquisitions, so its clock no longer
+	 * keeps histories alive
+	 */
+	public void threadJoined(Integer t) {
+		int threadId = threadMap.get(t, -1);
+		if (threadId != -1)
+			this.joined[threadId] = true;
+	}
+
+	/**
+	 * Drops the history that no later deadlock check can use.  Every later
+	 * acquisition is by a live thread, so the ideal of every later check
+	 * contains the pointwise minimum of the clocks of the live threads:
+	 * <ul>
+	 * <li>a vertex occurrence below it is always in the ideal, i.e. never
+	 * part of a deadlock, and</li>
+	 * <li>of the critical sections of a thread on a lock entered below it,
+	 * only the last one can still be the maximal lower bound of an ideal.</li>
+	 * </ul>
+	 * Vertices left without occurrences are removed from verticesHoldingLock
+	 * until they occur again.  A thread whose start was not observed is only
+	 * accounted for from its first event on.
+	 */
+	public void collectGarbage() {
+		VectorClock frontier = null;
+		for (int threadId = 0; threadId < numThreads; threadId++) {
+			if (this.joined[threadId])
+				continue;
+			VectorClock C_t = this.clockThread[threadId];
+			if (frontier == null) {
+				frontier = new VectorClock(C_t);
 			} else {
-				this.reentrantLockCounter.put(t, l, 1);
+				int dim = Math.max(frontier.getDim(), C_t.getDim());
+				for (int k = 0; k < dim; k++) {
+					int c = Math.min(frontier.getClockIndex(k), C_t.getClockIndex(k));
+					frontier.setClockIndex(k, c);
+				}
 			}
-		} else {
-			VectorClock copyClock = new VectorClock(this.clockThread.get(t));
-			this.csHist.get(t, l).add(new Triplet<Integer, VectorClock, VectorClock>(acquireId, copyClock, null));
-		}		
-	}
-
-	public void handleDeadlock(boolean deadlock, Quaternary<Integer, Integer, HashSet<Integer>, Integer> vertex1, Quaternary<Integer, Integer, HashSet<Integer>, Integer> vertex2) {
-		if (deadlock) {
-			HashSet<Quaternary<Integer, Integer, HashSet<Integer>, Integer>> vertexSet = new HashSet<Quaternary<Integer, Integer, HashSet<Integer>, Integer>>();
-			vertexSet.add(vertex1);
-			vertexSet.add(vertex2);
-			if (!declaredDeadlocks.contains(vertexSet)) {
-				System.out.println("Deadlock found on cycle: " + vertexSet);
-				System.out.println("locations: " + ObserverForActiveTesting.getIidToLine(vertex1.fourth) + ", " + ObserverForActiveTesting.getIidToLine(vertex2.fourth));
-				
-				this.declaredDeadlocks.add(vertexSet);
-				this.uniqueDeadlockCount++;
+		}
+		if (frontier == null)
+			return;
+
+		for (int li = 0; li < numLocks; li++) {
+			for (CSHistory history : this.csHist.get(li)) {
+				history.dropBefore(history.maxLowerBound(frontier));
 			}
 		}
+
+		vertices.dropOccurrencesBelow(frontier);
+		for (int li = 0; li < numLocks; li++) {
+			int[] holders = this.verticesHoldingLock[li];
+			int n = 0;
+			for (int i = 0; i < this.verticesHoldingLockSize[li]; i++) {
+				if (vertices.hasOccurrences(holders[i]))
+					holders[n++] = holders[i];
+				else
+					this.registered[holders[i]] = false;
+			}
+			this.verticesHoldingLockSize[li] = n;
+		}
 	}
 
-	public int keepCycleBooks(Integer t, Integer l, Integer locationId) {
-		if (this.locksHeld.containsKey(t) && this.locksHeld.get(t).size() > 0) {
-			HashSet<Integer> lockSet = new HashSet<Integer>(this.locksHeld.get(t));
-			Quaternary<Integer, Integer, HashSet<Integer>, Integer> vertex = new Quaternary(t, l, lockSet, locationId);
-			
-			int vertexIndex;
-			if (!this.vertexToIndex.containsKey(vertex)) {
-				vertexIndex = this.vertexToIndex.size();
-				this.vertexToIndex.put(vertex, vertexIndex);
-				this.vertexToVCs.put(vertexIndex, new LinkedList<Pair<VectorClock, VectorClock>>());
-			} else {
-				vertexIndex = this.vertexToIndex.get(vertex);
+	private CSHistory getCSHistory(int threadId, int li) {
+		long key = LongMap.pack(threadId, li);
+		CSHistory history = this.threadLockToCSHist.get(key);
+		if (history == null) {
+			history = new CSHistory(threadId);
+			this.threadLockToCSHist.put(key, history);
+			this.csHist.get(li).add(history);
+			int n = this.locksOfThreadIdSize[threadId];
+			if (n == this.locksOfThreadId[threadId].length)
+				this.locksOfThreadId[threadId] = Arrays.copyOf(this.locksOfThreadId[threadId], 2 * n);
+			this.locksOfThreadId[threadId][n] = li;
+			this.locksOfThreadIdSize[threadId] = n + 1;
+		}
+		return history;
+	}
+
+	private String vertexToString(int v) {
+		return "<" + threadOfId[vertices.getThread(v)] + ", " + vertices.getLock(v) + ", "
+				+ Arrays.toString(lockSets.get(vertices.getLockSet(v))) + ", " + vertices.getIid(v) + ">";
+	}
+
+	private void declareDeadlock(int[] cycle, int length) {
+		StringBuilder vertexSet = new StringBuilder("[");
+		StringBuilder locations = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			if (i > 0) {
+				vertexSet.append(", ");
+				locations.append(", ");
 			}
-			
-			VectorClock C_prev = new VectorClock(this.clockThread.get(t));
-			VectorClock C = new VectorClock(this.clockThread.get(t));
-			int threadId = getThreadId(t);
-			C.inc(threadId);
-			
-			this.vertexToVCs.get(vertexIndex).add(new Pair<VectorClock, VectorClock>(C_prev, C));
-			
-			return vertexIndex;
-		} else {
+			vertexSet.append(vertexToString(cycle[i]));
+			locations.append(ObserverForActiveTesting.getIidToLine(vertices.getIid(cycle[i])));
+		}
+		System.out.println("Deadlock found on cycle: " + vertexSet.append("]"));
+		System.out.println("locations: " + locations);
+		this.uniqueDeadlockCount++;
+	}
+
+	private static long pairKey(int v1, int v2) {
+		return v1 < v2 ? LongMap.pack(v1, v2) : LongMap.pack(v2, v1);
+	}
+
+	/**
+	 * records an occurrence of the vertex of the acquisition of l by t at
+	 * locationId and returns the vertex, or -1 if t holds no lock
+	 */
+	public int keepCycleBooks(Integer t, Integer l, Integer locationId) {
+		int threadId = getThreadId(t);
+		if (this.locksHeldSize[threadId] == 0)
 			return -1;
+		int vertex = vertices.intern(threadId, l, getLocksHeldId(threadId), locationId);
+		if (vertex == this.registered.length)
+			this.registered = Arrays.copyOf(this.registered, 2 * vertex);
+
+		VectorClock C_prev = new VectorClock(this.clockThread[threadId]);
+		VectorClock C = new VectorClock(this.clockThread[threadId]);
+		C.inc(threadId);
+		vertices.addOccurrence(vertex, C_prev, C);
+		return vertex;
+	}
+
+	private int getLocksHeldId(int threadId) {
+		if (this.locksHeldId[threadId] == -1)
+			this.locksHeldId[threadId] = lockSets.intern(this.locksHeld[threadId], this.locksHeldSize[threadId]);
+		return this.locksHeldId[threadId];
+	}
+
+	/**
+	 * adds vertex to verticesHoldingLock of each lock it holds, unless it is there
+	 */
+	private void register(int vertex) {
+		if (this.registered[vertex])
+			return;
+		this.registered[vertex] = true;
+		for (int heldLock : lockSets.get(vertices.getLockSet(vertex))) {
+			int li = getLockIndex(heldLock);
+			int n = this.verticesHoldingLockSize[li];
+			if (n == this.verticesHoldingLock[li].length)
+				this.verticesHoldingLock[li] = Arrays.copyOf(this.verticesHoldingLock[li], 2 * n);
+			this.verticesHoldingLock[li][n] = vertex;
+			this.verticesHoldingLockSize[li] = n + 1;
 		}
 	}
 
 	public boolean findDeadlocks(int vertexIndex, int t, int l, int locationId) {
-		HashSet<Integer> lockSet = new HashSet<Integer>(this.locksHeld.get(t));
-		Quaternary<Integer, Integer, HashSet<Integer>, Integer> currentVertex = new Quaternary(t, l, lockSet, locationId);
-		
-		List<Quaternary> deadlockPatterns = getDeadlockPatterns(currentVertex, t, l, locationId);
+		register(vertexIndex);
+		int[] lockSet = lockSets.get(vertices.getLockSet(vertexIndex));
+		int threadId = vertices.getThread(vertexIndex);
+		VectorClock current = vertices.getBefore(vertexIndex, vertices.getEnd(vertexIndex) - 1);
+
 		boolean foundDeadlock = false;
-		for (Quaternary<Integer, Integer, HashSet<Integer>, Integer> vertexPrime : deadlockPatterns) {
-			int vertexPrimeIndex = this.vertexToIndex.get(vertexPrime);
-			int threadQueueIndex = 0;
-			if (this.vertexToEventQueueIndex.contains(vertexPrimeIndex, vertexIndex)) 
-				threadQueueIndex = this.vertexToEventQueueIndex.get(vertexPrimeIndex, vertexIndex);
-
-
-			Pair<VectorClock, VectorClock> vcPair = this.vertexToVCs.get(vertexIndex).get(this.vertexToVCs.get(vertexIndex).size()-1);
-			for (Pair<VectorClock, VectorClock> vcPrimePair : this.vertexToVCs.get(vertexPrimeIndex).subList(threadQueueIndex, this.vertexToVCs.get(vertexPrimeIndex).size())) {
-				HashSet<Quaternary<Integer, Integer, HashSet<Integer>, Integer>> vertexSet = new HashSet<Quaternary<Integer, Integer, HashSet<Integer>, Integer>>();
-				vertexSet.add(currentVertex);
-				vertexSet.add(vertexPrime);
-				if (!declaredDeadlocks.contains(vertexSet) && (!vertexSetToSPIdeal.containsKey(vertexSet) || vertexSetToSPIdeal.get(vertexSet).isLessThanOrEqual(vcPrimePair.second))) {
-					Pair<Boolean, VectorClock> deadlock = checkForDeadlocks(vcPrimePair, vcPair);
-					this.handleDeadlock(deadlock.first, currentVertex, vertexPrime);
-					if (deadlock.first) {
-						foundDeadlock = true;
-						break;
-					} else 
-						vertexSetToSPIdeal.put(vertexSet, deadlock.second);
+		int li = getLockIndex(l);
+		int[] holders = this.verticesHoldingLock[li];
+		int n = this.verticesHoldingLockSize[li];
+		for (int h = 0; h < n; h++) {
+			int vertexPrime = holders[h];
+			if (vertices.getThread(vertexPrime) == threadId || vertices.getLock(vertexPrime) == l)
+				continue;
+			int[] lockSetPrime = lockSets.get(vertices.getLockSet(vertexPrime));
+			if (!IntArrayTable.contains(lockSet, vertices.getLock(vertexPrime)) || !IntArrayTable.disjoint(lockSet, lockSetPrime))
+				continue;
+			long pair = pairKey(vertexIndex, vertexPrime);
+			for (int i = vertices.getFirst(vertexPrime); i < vertices.getEnd(vertexPrime); i++) {
+				if (declaredDeadlocks.containsKey(pair))
+					break;
+				VectorClock cached = vertexPairToSPIdeal.get(pair);
+				if (cached != null && !cached.isLessThanOrEqual(vertices.getAfter(vertexPrime, i)))
+					continue;
+				VectorClock ideal = new VectorClock(numThreads);
+				ideal.updateMax(vertices.getBefore(vertexPrime, i));
+				ideal.updateMax(current);
+				VectorClock SPIdeal = this.computeSPIdeal(ideal);
+				countCheckForDeadlocks++;
+				if (vertices.getAfter(vertexPrime, i).isLessThanOrEqual(SPIdeal)) {
+					vertexPairToSPIdeal.put(pair, SPIdeal);
+				} else {
+					declaredDeadlocks.put(pair, Boolean.TRUE);
+					declareDeadlock(new int[]{vertexIndex, vertexPrime}, 2);
+					foundDeadlock = true;
 				}
 			}
 		}
@@ -171,181 +289,357 @@ public class SyncPDState {
 	}
 
 
-	private List<Quaternary> getDeadlockPatterns(Quaternary<Integer, Integer, HashSet<Integer>, Integer> currentVertex, int t, int l, int locationId) {
-		for (Integer heldLock : this.locksHeld.get(t) ) {
-			if (verticesHoldingLock.containsKey(heldLock)) {
-				verticesHoldingLock.get(heldLock).add(currentVertex);
-			} else {
-				Set<Quaternary<Integer, Integer, HashSet<Integer>, Integer>> vertexSet = new HashSet();
-				vertexSet.add(currentVertex);
-				verticesHoldingLock.put(heldLock, vertexSet);
+	// state of the search for cycles of more than two vertices
+	private int[] cycleVertices;
+	private VectorClock[] cycleEvents;
+	private int searchBudget;
+	private boolean foundLongDeadlock;
+
+	/**
+	 * Looks for deadlock patterns of 3 up to maxLength vertices that end with
+	 * the vertex of the current acquisition: v1 requests a lock held by v2,
+	 * v2 one held by v3, ..., and the last vertex one held by v1, with
+	 * distinct threads and disjoint locksets.  findDeadlocks must have been
+	 * called first, since it records the current vertex in verticesHoldingLock.
+	 * <p/>
+	 * Candidates are taken from verticesHoldingLock, and a partial pattern is
+	 * dropped as soon as a vertex is not new, shares a thread or a held lock
+	 * with it, or requests a lock held inside it.  The SP-ideal of a prefix is
+	 * computed once and extended for every longer pattern, and a prefix is
+	 * dropped once its ideal contains one of its acquisitions, as longer
+	 * patterns only have larger ideals.  At most budget SP-ideals are computed.
+	 */
+	public boolean findLongDeadlocks(int vertexIndex, int t, int l, int locationId, int maxLength, int budget) {
+		if (maxLength < 3)
+			return false;
+		int last = vertices.getEnd(vertexIndex) - 1;
+
+		cycleVertices = new int[maxLength];
+		cycleEvents = new VectorClock[maxLength];
+		cycleVertices[0] = vertexIndex;
+		cycleEvents[0] = vertices.getAfter(vertexIndex, last);
+		searchBudget = budget;
+		foundLongDeadlock = false;
+		VectorClock ideal = this.computeSPIdeal(new VectorClock(vertices.getBefore(vertexIndex, last)));
+		extendCycle(1, l, ideal);
+		cycleVertices = null;
+		cycleEvents = null;
+		return foundLongDeadlock;
+	}
+
+	private void extendCycle(int length, int requestedLock, VectorClock prefixIdeal) {
+		int li = lockMap.get(requestedLock, -1);
+		if (li == -1)
+			return;
+		int[] firstLockSet = lockSets.get(vertices.getLockSet(cycleVertices[0]));
+		for (int h = 0; h < this.verticesHoldingLockSize[li]; h++) {
+			int vertexPrime = this.verticesHoldingLock[li][h];
+			if (searchBudget <= 0)
+				return;
+			if (!canExtend(length, vertexPrime))
+				continue;
+			boolean closes = IntArrayTable.contains(firstLockSet, vertices.getLock(vertexPrime));
+			if (closes && length < 2)
+				continue; // pairs are found by findDeadlocks
+			if (!closes && length + 1 == cycleVertices.length)
+				continue;
+			cycleVertices[length] = vertexPrime;
+			int[] cycle = null;
+			if (closes) {
+				cycle = Arrays.copyOf(cycleVertices, length + 1);
+				Arrays.sort(cycle);
+				if (declaredCycles.find(cycle, cycle.length) != -1)
+					continue;
 			}
-		}
-		
-		List<Quaternary> verticesInDeadlockPattern = new LinkedList();
-		if (verticesHoldingLock.containsKey(l)) {
-			for (Quaternary<Integer, Integer, HashSet<Integer>, Integer> vertexPrime : this.verticesHoldingLock.get(l)) {
-				if (!vertexPrime.first.equals(t)) {
-					if (!vertexPrime.second.equals(l)) {
-						HashSet<Integer> intersection = new HashSet<Integer>(vertexPrime.third);
-						intersection.retainAll(currentVertex.third);
-						
-						if (intersection.size() == 0) {							
-							if (vertexPrime.third.contains(l) && currentVertex.third.contains(vertexPrime.second)) { 
-								HashSet<Quaternary<Integer, Integer, HashSet<Integer>, Integer>> vertexSet = new HashSet<Quaternary<Integer, Integer, HashSet<Integer>, Integer>>();
-								vertexSet.add(currentVertex);
-								vertexSet.add(vertexPrime);
-								if (!declaredDeadlocks.contains(vertexSet))
-									verticesInDeadlockPattern.add(vertexPrime);
-							}
-						}
-					}
+			for (int i = vertices.getFirst(vertexPrime); i < vertices.getEnd(vertexPrime); i++) {
+				if (searchBudget-- <= 0)
+					return;
+				VectorClock ideal = new VectorClock(prefixIdeal);
+				ideal.updateMax(vertices.getBefore(vertexPrime, i));
+				ideal = this.computeSPIdeal(ideal);
+				countCheckForDeadlocks++;
+				cycleEvents[length] = vertices.getAfter(vertexPrime, i);
+				if (containsAcquire(length, ideal))
+					continue;
+				if (closes) {
+					declaredCycles.intern(cycle, cycle.length);
+					declareDeadlock(cycleVertices, length + 1);
+					foundLongDeadlock = true;
+					break;
 				}
+				extendCycle(length + 1, vertices.getLock(vertexPrime), ideal);
 			}
 		}
-		
-		return verticesInDeadlockPattern;
 	}
 
-	long countCheckForDeadlocks = 0L;
-	private Pair<Boolean, VectorClock> checkForDeadlocks(Pair<VectorClock, VectorClock> beforeEvent, Pair<VectorClock, VectorClock> currentEvent) {
-		VectorClock ideal = new VectorClock(this.threadSet.size());
-		
-		ideal.updateMax(beforeEvent.first);
-		ideal.updateMax(currentEvent.first);
-		VectorClock SPIdeal = this.computeSPIdeal(ideal);
-
-		countCheckForDeadlocks++;
-		if (beforeEvent.second.isLessThanOrEqual(SPIdeal)) 
-			return new Pair(false, SPIdeal);
-		else 
-			return new Pair(true, SPIdeal);
-	}
-
-	private Triplet<Integer, VectorClock, VectorClock> maxLowerBound(VectorClock U, LinkedList<Triplet<Integer, VectorClock, VectorClock>> Lst) {
-		Triplet<Integer, VectorClock, VectorClock> maxTriplet = new Triplet<Integer, VectorClock, VectorClock>(0, null, null); 
-		
-		int frontComputation = Lst.size() < 10 ? Lst.size() : 10;
-		for (int i = 0; i < frontComputation; i++) {
-			Triplet<Integer, VectorClock, VectorClock> triplet = Lst.get(i);
-			if (triplet.second.isLessThanOrEqual(U)) {
-				maxTriplet = new Triplet<Integer, VectorClock, VectorClock>(triplet.first, triplet.second, triplet.third);
-			} else {
-				return maxTriplet;
-			}
+	/**
+	 * returns true iff vertexPrime may follow the first length vertices of
+	 * the pattern being built
+	 */
+	private boolean canExtend(int length, int vertexPrime) {
+		int[] lockSetPrime = lockSets.get(vertices.getLockSet(vertexPrime));
+		int lockPrime = vertices.getLock(vertexPrime);
+		if (IntArrayTable.contains(lockSetPrime, lockPrime))
+			return false;
+		for (int i = 0; i < length; i++) {
+			int v = cycleVertices[i];
+			if (vertices.getThread(v) == vertices.getThread(vertexPrime))
+				return false;
+			int[] lockSet = lockSets.get(vertices.getLockSet(v));
+			if (!IntArrayTable.disjoint(lockSet, lockSetPrime))
+				return false;
+			// the lock requested by vertexPrime can only be held by the first vertex
+			if (i > 0 && IntArrayTable.contains(lockSet, lockPrime))
+				return false;
 		}
+		return true;
+	}
 
-		for (int i = Lst.size()-1; i >= frontComputation; i--) {
-			Triplet<Integer, VectorClock, VectorClock> triplet = Lst.get(i);
-			if (triplet.second.isLessThanOrEqual(U)) {
-				maxTriplet = new Triplet<Integer, VectorClock, VectorClock>(triplet.first, triplet.second, triplet.third);
-				break;
-			}
+	/**
+	 * returns true iff one of the acquisitions of the pattern other than the
+	 * current one is in ideal, i.e. cannot be the last event of its thread
+	 */
+	private boolean containsAcquire(int length, VectorClock ideal) {
+		for (int i = 1; i <= length; i++) {
+			if (cycleEvents[i].isLessThanOrEqual(ideal))
+				return true;
 		}
-		return maxTriplet;
-	}
-
-	public VectorClock computeSPIdeal(VectorClock I) {		
-		VectorClock IOrig = new VectorClock(this.threadSet.size());
-		do {
-			for (Integer l : this.lockSet) {
-				Integer maxIndex = -1;
-				Integer maxThread = null;
-				
-				Table<Integer, Integer, VectorClock> releaseClock = HashBasedTable.create(); 
-	
-				for (Integer t : this.threadSet) {
-					if (csHist.get(t, l) != null) {
-						Triplet<Integer, VectorClock, VectorClock> triplet = maxLowerBound(I, csHist.get(t, l));
-						if (triplet.first > maxIndex) {
-							maxIndex = triplet.first;
-							maxThread = t;
-						}						
-						if (triplet.third != null) {
-							releaseClock.put(t, l, triplet.third);
-						}						
-					}
+		return false;
+	}
+
+	long countCheckForDeadlocks = 0L;
+
+	/**
+	 * Closes the ideal I under the lock semantics: for every lock, all
+	 * critical sections entered in I but the last one must have been left,
+	 * so their releases are added to I.  A lock is visited again only when
+	 * the component of a thread with critical sections on it has grown.
+	 * I is updated in place and returned.
+	 */
+	public VectorClock computeSPIdeal(VectorClock I) {
+		for (int li = 0; li < numLocks; li++) {
+			worklist[li] = li;
+			queued[li] = true;
+		}
+		worklistHead = 0;
+		worklistSize = numLocks;
+		while (worklistSize > 0) {
+			int li = worklist[worklistHead];
+			worklistHead = (worklistHead + 1) % numLocks;
+			worklistSize--;
+			queued[li] = false;
+			List<CSHistory> histories = this.csHist.get(li);
+			int maxAcquireId = -1;
+			CSHistory maxHistory = null;
+			for (int k = 0; k < histories.size(); k++) {
+				CSHistory history = histories.get(k);
+				int i = history.maxLowerBound(I);
+				if (i >= 0 && history.getAcquireId(i) > maxAcquireId) {
+					maxAcquireId = history.getAcquireId(i);
+					maxHistory = history;
 				}
-				IOrig = new VectorClock(I);
-				for (Integer t : this.threadSet) {
-					if (!t.equals(maxThread)) {
-						if (releaseClock.get(t, l) != null) {
-							I.updateMax(releaseClock.get(t, l));
-						}
-					}
+			}
+			for (int k = 0; k < histories.size(); k++) {
+				CSHistory history = histories.get(k);
+				if (history == maxHistory)
+					continue;
+				int i = history.maxLowerBound(I);
+				if (i >= 0 && history.getRelease(i) != null) {
+					join(I, history.getRelease(i));
 				}
 			}
-		} while(IOrig.equals(I));
+		}
 		return I;
 	}
 
+	/**
+	 * I := max(I, vc), queueing the locks of every thread whose component grew
+	 */
+	private void join(VectorClock I, VectorClock vc) {
+		for (int threadId = 0; threadId < vc.getDim(); threadId++) {
+			int c = vc.getClockIndex(threadId);
+			if (c > I.getClockIndex(threadId)) {
+				I.setClockIndex(threadId, c);
+				int[] locks = this.locksOfThreadId[threadId];
+				for (int k = 0; k < this.locksOfThreadIdSize[threadId]; k++) {
+					int li = locks[k];
+					if (!queued[li]) {
+						queued[li] = true;
+						worklist[(worklistHead + worklistSize) % numLocks] = li;
+						worklistSize++;
+					}
+				}
+			}
+		}
+	}
+
 	public void updateRelease(Integer t, Integer l) {
-		if (this.reentrantLockCounter.contains(t, l) && this.reentrantLockCounter.get(t, l) > 0) {
-			this.reentrantLockCounter.put(t, l, this.reentrantLockCounter.get(t, l) - 1);
-		} else {
-			VectorClock copyClock = new VectorClock(this.clockThread.get(t));
-			this.csHist.get(t, l).getLast().third = copyClock;
+		if (getLockHeldCount(t, l) == 1) {
+			int threadId = getThreadId(t);
+			VectorClock copyClock = new VectorClock(this.clockThread[threadId]);
+			getCSHistory(threadId, getLockIndex(l)).setLastRelease(copyClock);
 		}
 	}
 
+	private int indexOfLockHeld(int threadId, int l) {
+		return Arrays.binarySearch(this.locksHeld[threadId], 0, this.locksHeldSize[threadId], l);
+	}
+
 	public void addToLocksHeld(Integer t, Integer l) {
-		if (!this.locksHeld.containsKey(t)) {
-			HashMultiset<Integer> hms = new HashMultiset<>();
-			this.locksHeld.put(t, hms);
-		} 
-		this.locksHeld.get(t).add(l);
+		int threadId = getThreadId(t);
+		int i = indexOfLockHeld(threadId, l);
+		if (i >= 0) {
+			this.lockHeldCounts[threadId][i]++;
+			return;
+		}
+		i = -i - 1;
+		int n = this.locksHeldSize[threadId];
+		if (n == this.locksHeld[threadId].length) {
+			this.locksHeld[threadId] = Arrays.copyOf(this.locksHeld[threadId], 2 * n);
+			this.lockHeldCounts[threadId] = Arrays.copyOf(this.lockHeldCounts[threadId], 2 * n);
+		}
+		System.arraycopy(this.locksHeld[threadId], i, this.locksHeld[threadId], i + 1, n - i);
+		System.arraycopy(this.lockHeldCounts[threadId], i, this.lockHeldCounts[threadId], i + 1, n - i);
+		this.locksHeld[threadId][i] = l;
+		this.lockHeldCounts[threadId][i] = 1;
+		this.locksHeldSize[threadId] = n + 1;
+		this.locksHeldId[threadId] = -1;
 	}
-	
+
 	public void removeLockFromLocksHeld(Integer t, Integer l) {
-		this.locksHeld.get(t).remove(l);
+		int threadId = getThreadId(t);
+		int i = indexOfLockHeld(threadId, l);
+		if (i < 0 || --this.lockHeldCounts[threadId][i] > 0)
+			return;
+		int n = --this.locksHeldSize[threadId];
+		System.arraycopy(this.locksHeld[threadId], i + 1, this.locksHeld[threadId], i, n - i);
+		System.arraycopy(this.lockHeldCounts[threadId], i + 1, this.lockHeldCounts[threadId], i, n - i);
+		this.locksHeldId[threadId] = -1;
 	}
 
 	public int getLockHeldCount(Integer t, Integer l) {
-		return this.locksHeld.get(t).count(l);
+		int threadId = getThreadId(t);
+		int i = indexOfLockHeld(threadId, l);
+		return i < 0 ? 0 : this.lockHeldCounts[threadId][i];
 	}
-	
+
 	public int uniqueLocksHeld(Integer t) {
-		return this.locksHeld.get(t).elementSet().size();
+		return this.locksHeldSize[getThreadId(t)];
+	}
+
+	/**
+	 * The last write to a variable, as the epoch of the write, i.e. the
+	 * writer and its own component at the write, and the clock of the writer
+	 * for the other components.  The record is updated in place.
+	 */
+	private static class LastWrite {
+		int threadId;
+		int epoch;
+		VectorClock clock;
+	}
+
+	/**
+	 * Records a write of t to memory.  The other components of the clock of
+	 * t only change on joins, so all writes of t between two joins share one
+	 * copy of its clock, and a write allocates nothing once its variable has
+	 * been written before.
+	 */
+	public void write(int t, long memory) {
+		addThread(t);
+		int threadId = getThreadId(t);
+		VectorClock C_t = this.clockThread[threadId];
+		C_t.inc(threadId);
+		if (this.writeClock[threadId] == null)
+			this.writeClock[threadId] = new VectorClock(C_t);
+		LastWrite w = this.lastWrites.get(memory);
+		if (w == null) {
+			w = new LastWrite();
+			this.lastWrites.put(memory, w);
+		}
+		w.threadId = threadId;
+		w.epoch = C_t.getClockIndex(threadId);
+		w.clock = this.writeClock[threadId];
+	}
+
+	/**
+	 * Records a read of t from memory, joining the clock of the last write
+	 * unless t has already seen its epoch.
+	 */
+	public void read(int t, long memory) {
+		addThread(t);
+		int threadId = getThreadId(t);
+		VectorClock C_t = this.clockThread[threadId];
+		C_t.inc(threadId);
+		LastWrite w = this.lastWrites.get(memory);
+		if (w != null && C_t.getClockIndex(w.threadId) < w.epoch) {
+			C_t.updateMax(w.clock);
+			C_t.setClockIndex(w.threadId, w.epoch);
+			this.writeClock[threadId] = null;
+		}
+	}
+
+	/**
+	 * Records that parent joined child.
+	 */
+	public void join(int parent, int child) {
+		int threadId = getThreadId(parent);
+		this.clockThread[threadId].inc(threadId);
+		VectorClock C_child = getThreadVC(child);
+		if (C_child != null) {
+			this.clockThread[threadId].updateMax(C_child);
+			this.writeClock[threadId] = null;
+			threadJoined(child);
+		}
 	}
 
 	public void incClockThread(int index) {
-		VectorClock C_t = this.clockThread.get(index);
 		int threadId = getThreadId(index);
-		C_t.inc(threadId);
+		this.clockThread[threadId].inc(threadId);
 	}
 
 	public VectorClock getThreadVC(int thread) {
-		if (this.clockThread.containsKey(thread)) {
-			return this.clockThread.get(thread);
-		} else {
-			return null;
+		int threadId = threadMap.get(thread, -1);
+		return threadId == -1 ? null : this.clockThread[threadId];
+	}
+
+	private int newThreadId(int thread, VectorClock vc) {
+		int threadId = numThreads++;
+		if (threadId == threadOfId.length) {
+			int n = 2 * threadId;
+			threadOfId = Arrays.copyOf(threadOfId, n);
+			clockThread = Arrays.copyOf(clockThread, n);
+			joined = Arrays.copyOf(joined, n);
+			locksHeld = Arrays.copyOf(locksHeld, n);
+			lockHeldCounts = Arrays.copyOf(lockHeldCounts, n);
+			locksHeldSize = Arrays.copyOf(locksHeldSize, n);
+			locksHeldId = Arrays.copyOf(locksHeldId, n);
+			locksOfThreadId = Arrays.copyOf(locksOfThreadId, n);
+			locksOfThreadIdSize = Arrays.copyOf(locksOfThreadIdSize, n);
+			writeClock = Arrays.copyOf(writeClock, n);
 		}
+		threadMap.put(thread, threadId);
+		threadOfId[threadId] = thread;
+		vc.inc(threadId);
+		clockThread[threadId] = vc;
+		locksHeld[threadId] = new int[4];
+		lockHeldCounts[threadId] = new int[4];
+		locksHeldId[threadId] = -1;
+		locksOfThreadId[threadId] = new int[4];
+		return threadId;
 	}
 
 	public void addThread(int parent, int child) {
-		int parentThreadId = getThreadId(parent);
-		int childThreadId = this.threadSet.size();
-		threadMap.put(child, childThreadId);
-
-		VectorClock newVC = new VectorClock(this.getThreadVC(parent));
-		newVC.inc(childThreadId);
-		this.clockThread.put(child, newVC);
-		this.threadSet.add(child);
-		this.getThreadVC(parent).adjustSize(this.threadSet.size());
+		newThreadId(child, new VectorClock(this.getThreadVC(parent)));
+		this.getThreadVC(parent).adjustSize(numThreads);
 	}
 
 	public void addThread(int newThread) {
-		if (!this.threadSet.contains(newThread)) {
-			int threadId = this.threadSet.size();
-			threadMap.put(newThread, threadId);
-			this.threadSet.add(newThread);
-			VectorClock newVC = new VectorClock(this.threadSet.size());
-			newVC.inc(threadId);
-			this.clockThread.put(newThread, newVC);
+		if (threadMap.get(newThread, -1) == -1) {
+			newThreadId(newThread, new VectorClock(numThreads + 1));
 		}
 	}
 
-	public Integer getThreadId(int thread) {
-		return this.threadMap.get(thread);
+	public int getThreadId(int thread) {
+		return threadMap.get(thread, -1);
 	}
-}
\ No newline at end of file
+}
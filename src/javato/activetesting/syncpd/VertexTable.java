@@ -0,0 +1,159 @@
+package javato.activetesting.syncpd;
+
+import java.util.Arrays;
+
+import javato.activetesting.syncpd.util.VectorClock;
+
+/**
+ * The vertices of SyncPD, i.e. (thread, requested lock, lock set held,
+ * location) tuples, interned as dense int ids, with the clocks of their
+ * occurrences: the clock of the thread before and after each acquisition,
+ * oldest first.
+ */
+public class VertexTable {
+	private int size = 0;
+	private int[] threads = new int[16];
+	private int[] locks = new int[16];
+	private int[] lockSets = new int[16];
+	private int[] iids = new int[16];
+	private int[] slots = new int[32];	// vertex + 1, 0 if empty
+
+	private VectorClock[][] before = new VectorClock[16][];
+	private VectorClock[][] after = new VectorClock[16][];
+	private int[] first = new int[16];
+	private int[] end = new int[16];
+
+	public int size() {
+		return size;
+	}
+
+	public int getThread(int v) {
+		return threads[v];
+	}
+
+	public int getLock(int v) {
+		return locks[v];
+	}
+
+	public int getLockSet(int v) {
+		return lockSets[v];
+	}
+
+	public int getIid(int v) {
+		return iids[v];
+	}
+
+	/**
+	 * returns the id of the vertex, adding it if it is new
+	 */
+	public int intern(int thread, int lock, int lockSet, int iid) {
+		int h = hash(thread, lock, lockSet, iid);
+		int mask = slots.length - 1;
+		int i = h & mask;
+		for (; slots[i] != 0; i = (i + 1) & mask) {
+			int v = slots[i] - 1;
+			if (threads[v] == thread && locks[v] == lock && lockSets[v] == lockSet && iids[v] == iid)
+				return v;
+		}
+		if (size == threads.length) {
+			int n = 2 * size;
+			threads = Arrays.copyOf(threads, n);
+			locks = Arrays.copyOf(locks, n);
+			lockSets = Arrays.copyOf(lockSets, n);
+			iids = Arrays.copyOf(iids, n);
+			before = Arrays.copyOf(before, n);
+			after = Arrays.copyOf(after, n);
+			first = Arrays.copyOf(first, n);
+			end = Arrays.copyOf(end, n);
+		}
+		int v = size++;
+		threads[v] = thread;
+		locks[v] = lock;
+		lockSets[v] = lockSet;
+		iids[v] = iid;
+		before[v] = new VectorClock[2];
+		after[v] = new VectorClock[2];
+		if (2 * size > slots.length) {
+			slots = new int[2 * slots.length];
+			for (int u = 0; u < size; u++)
+				insert(u);
+		} else {
+			slots[i] = v + 1;
+		}
+		return v;
+	}
+
+	private void insert(int v) {
+		int mask = slots.length - 1;
+		int i = hash(threads[v], locks[v], lockSets[v], iids[v]) & mask;
+		while (slots[i] != 0)
+			i = (i + 1) & mask;
+		slots[i] = v + 1;
+	}
+
+	private static int hash(int thread, int lock, int lockSet, int iid) {
+		int h = ((thread * 31 + lock) * 31 + lockSet) * 31 + iid;
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	public void addOccurrence(int v, VectorClock clockBefore, VectorClock clockAfter) {
+		if (end[v] == before[v].length) {
+			// reuse the space of dropped occurrences before growing
+			int n = end[v] - first[v];
+			VectorClock[] b = before[v], a = after[v];
+			if (2 * n > b.length) {
+				b = Arrays.copyOf(b, 2 * b.length);
+				a = Arrays.copyOf(a, 2 * a.length);
+			}
+			System.arraycopy(before[v], first[v], b, 0, n);
+			System.arraycopy(after[v], first[v], a, 0, n);
+			Arrays.fill(b, n, b.length, null);
+			Arrays.fill(a, n, a.length, null);
+			before[v] = b;
+			after[v] = a;
+			first[v] = 0;
+			end[v] = n;
+		}
+		before[v][end[v]] = clockBefore;
+		after[v][end[v]] = clockAfter;
+		end[v]++;
+	}
+
+	/**
+	 * occurrences of v are indexed from getFirst(v) to getEnd(v) - 1
+	 */
+	public int getFirst(int v) {
+		return first[v];
+	}
+
+	public int getEnd(int v) {
+		return end[v];
+	}
+
+	public boolean hasOccurrences(int v) {
+		return first[v] < end[v];
+	}
+
+	public VectorClock getBefore(int v, int i) {
+		return before[v][i];
+	}
+
+	public VectorClock getAfter(int v, int i) {
+		return after[v][i];
+	}
+
+	/**
+	 * forgets the oldest occurrences of every vertex whose clock after the
+	 * acquisition is below frontier
+	 */
+	public void dropOccurrencesBelow(VectorClock frontier) {
+		for (int v = 0; v < size; v++) {
+			while (first[v] < end[v] && after[v][first[v]].isLessThanOrEqual(frontier)) {
+				before[v][first[v]] = null;
+				after[v][first[v]] = null;
+				first[v]++;
+			}
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package javato.activetesting.syncstate;
+
+import javato.activetesting.lockset.LockSet;
+import javato.activetesting.vc.VectorClock;
+
+import java.util.Arrays;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * Everything the analyses track about the synchronization of one thread:
+ * the locks it holds with their reentrancy counts and acquisition iids, in
+ * acquisition order, the lockset built from them and its vector clock.
+ * <p/>
+ * The lockset is rebuilt only after the locks held change, so consecutive
+ * accesses share one LockSet instance, which must not be modified.
+ */
+public class SyncState {
+    private final int thread;
+    private int[] locks = new int[4];
+    private int[] iids = new int[4];
+    private int[] counts = new int[4];
+    private int depth = 0;
+    private LockSet lockSet = LockSet.emptySet;
+    private final VectorClock vc;
+    private Object attachment;
+
+    SyncState(int thread, VectorClock vc) {
+        this.thread = thread;
+        this.vc = vc;
+    }
+
+    public int getThread() {
+        return thread;
+    }
+
+    private int indexOf(int lock) {
+        for (int i = depth - 1; i >= 0; i--) {
+            if (locks[i] == lock) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @param iid
+     * @param lock is the id of the object about to be acquired
+     * @return true iff the thread will actually acquire the lock (and not re-acquire it.)
+     */
+    public boolean lockBefore(int iid, int lock) {
+        int i = indexOf(lock);
+        if (i != -1) {
+            counts[i]++;
+            return false;
+        }
+        if (depth == locks.length) {
+            locks = Arrays.copyOf(locks, 2 * depth);
+            iids = Arrays.copyOf(iids, 2 * depth);
+            counts = Arrays.copyOf(counts, 2 * depth);
+        }
+        locks[depth] = lock;
+        iids[depth] = iid;
+        counts[depth] = 1;
+        depth++;
+        lockSet = null;
+        return true;
+    }
+
+    /**
+     * throws RuntimeException if the lock is not currently held
+     *
+     * @param lock is the id of the object that has been released
+     * @return true iff the thread have actually released the lock
+     */
+    public boolean unlockAfter(int lock) {
+        int i = indexOf(lock);
+        if (i == -1) {
+            throw new RuntimeException("Trying to release unacquired lock " + lock);
+        }
+        if (--counts[i] > 0) {
+            return false;
+        }
+        depth--;
+        System.arraycopy(locks, i + 1, locks, i, depth - i);
+        System.arraycopy(iids, i + 1, iids, i, depth - i);
+        System.arraycopy(counts, i + 1, counts, i, depth - i);
+        lockSet = null;
+        return true;
+    }
+
+    public boolean holds(int lock) {
+        return indexOf(lock) != -1;
+    }
+
+    /**
+     * returns the number of locks held, not counting re-acquisitions
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * returns the i-th lock held, the outermost one being the 0-th
+     */
+    public int getLock(int i) {
+        return locks[i];
+    }
+
+    /**
+     * returns the iid at which the i-th lock held was acquired
+     */
+    public int getIid(int i) {
+        return iids[i];
+    }
+
+    /**
+     * returns the set of locks currently held by the thread
+     */
+    public LockSet getLockSet() {
+        if (lockSet == null) {
+            LockSet ls = new LockSet();
+            for (int i = 0; i < depth; i++) {
+                ls.add(locks[i]);
+            }
+            lockSet = ls;
+        }
+        return lockSet;
+    }
+
+    // make sure you make copy of this VC if you want to use in a Map
+    // the returned VC changes during an execution
+    public VectorClock getVectorClock() {
+        return vc;
+    }
+
+    /**
+     * returns the per-thread data an analysis has stored with this state
+     */
+    public Object getAttachment() {
+        return attachment;
+    }
+
+    public void setAttachment(Object attachment) {
+        this.attachment = attachment;
+    }
+}
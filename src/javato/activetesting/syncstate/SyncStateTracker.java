@@ -0,0 +1,96 @@
+package javato.activetesting.syncstate;
+
+import javato.activetesting.vc.VectorClock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * Hands out the SyncState of every thread and keeps their vector clocks
+ * like VectorClockTracker does.  An analysis looks the state of a thread up
+ * once per event; the state of the last thread looked up is cached, as
+ * consecutive events mostly come from the same thread.
+ */
+public class SyncStateTracker {
+    private Map<Integer, SyncState> threads = new HashMap<Integer, SyncState>();
+    private Map<Integer, VectorClock> notifyMessages = new HashMap<Integer, VectorClock>();
+    private SyncState last;
+
+    public SyncState get(Integer thread) {
+        SyncState s = last;
+        if (s != null && s.getThread() == thread) {
+            return s;
+        }
+        s = threads.get(thread);
+        if (s == null) {
+            s = new SyncState(thread, new VectorClock());
+            threads.put(thread, s);
+        }
+        last = s;
+        return s;
+    }
+
+    public void startBefore(Integer parent, Integer child) {
+        VectorClock vc = get(parent).getVectorClock();
+        SyncState c = new SyncState(child, new VectorClock(vc));
+        vc.inc(parent);
+        threads.put(child, c);
+        if (last != null && last.getThread() == child) {
+            last = c;
+        }
+        c.getVectorClock().inc(child);
+    }
+
+    public void joinAfter(Integer parent, Integer child) {
+        VectorClock vc = get(parent).getVectorClock();
+        VectorClock vc2 = get(child).getVectorClock();
+        vc.updateMax(vc2);
+        vc.inc(parent);
+    }
+
+    public void notifyBefore(Integer thread, Integer lock) {
+        VectorClock vc = get(thread).getVectorClock();
+        notifyMessages.put(lock, new VectorClock(vc));
+        vc.inc(thread);
+    }
+
+    public void waitAfter(Integer thread, Integer lock) {
+        VectorClock vc = get(thread).getVectorClock();
+        VectorClock vc2 = notifyMessages.get(lock);
+        vc.updateMax(vc2);
+        vc.inc(thread);
+    }
+}
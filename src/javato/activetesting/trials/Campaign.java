@@ -0,0 +1,231 @@
+package javato.activetesting.trials;
+
+import javato.activetesting.common.Parameters;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * Runs the trials of TrialRunner in parallel, every trial in a JVM and a
+ * working directory of its own under campaign/, so that the error.stat,
+ * error.stall, cbp.stat, ... of concurrent trials do not collide.  The
+ * read-only inputs of the trials, error.log, error.list, iidToLine.map and
+ * javato.usedids, are passed to them by absolute path.  Every trial also
+ * gets a seed of its own for ActiveChecker: javato.activetesting.campaign.seed,
+ * by default the current time, plus the index of the trial, and records
+ * its schedule to error.schedule, to be replayed by
+ * javato.activetesting.schedule.replay.
+ * <p/>
+ * javato.activetesting.campaign.workers trials run at once, by default one
+ * per core.  Every trial is stopped by its worker after
+ * javato.activetesting.trial.timeout seconds, DEFAULT_TIMEOUT if that sets
+ * no limit, and its JVM is killed if it outlives the timeout by more than
+ * the time the worker takes to stop it.
+ * <p/>
+ * When a trial ends, its error.stat, error.stall and cbp.stat are appended
+ * to those of the campaign, and "label seed outcome millis" to
+ * error.campaign.  The output of a trial is in its output.log.
+ */
+public class Campaign {
+    public static final String DIR = "campaign";
+    public static final String RESULTS_FILE = "error.campaign";
+    public static final String OUTPUT_FILE = "output.log";
+    private static final String REPORT_FILE = "trial.report";
+    private static final String CBP_STAT_PROPERTY = "cbreakpoint.stat";
+    private static final long KILL_GRACE = 120000;
+    // seconds a trial may take when javato.activetesting.trial.timeout sets no limit
+    public static final long DEFAULT_TIMEOUT = 600;
+    private static final long timeout = Parameters.trialTimeout > 0 ? Parameters.trialTimeout : DEFAULT_TIMEOUT;
+
+    private final List<Trial> trials;
+    private final File trialsFile;
+    private final Map<String, Integer> outcomes = new TreeMap<String, Integer>();
+
+    private Campaign(List<Trial> trials, File trialsFile) {
+        this.trials = trials;
+        this.trialsFile = trialsFile;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Trial> trials = TrialRunner.trials(System.getProperty("javato.activetesting.errorlist", ""),
+                System.getProperty("javato.activetesting.trialnum.list", "1"),
+                System.getProperty("javato.activetesting.trial.variants", ""));
+        long seed = Long.getLong("javato.activetesting.campaign.seed", System.currentTimeMillis());
+        int workers = Integer.getInteger("javato.activetesting.campaign.workers",
+                Runtime.getRuntime().availableProcessors());
+
+        for (int i = 0; i < trials.size(); i++) {
+            trials.get(i)
+                    .set("javato.activetesting.seed", Long.toString(seed + i))
+                    .set("javato.activetesting.trial.timeout", Long.toString(timeout))
+                    .set("javato.activetesting.errorlog.file", absolute(Parameters.ERROR_LOG_FILE))
+                    .set("javato.activetesting.errorlist.file", absolute(Parameters.ERROR_LIST_FILE))
+                    .set("javato.iidtoline.file", absolute(Parameters.iidToLineMapFile))
+                    .set("javato.usedids.file", absolute(Parameters.usedObjectId))
+                    .set("javato.activetesting.errorstat.file", "error.stat")
+                    .set("javato.activetesting.errorstall.file", "error.stall")
+                    .set("javato.activetesting.errorjournal.file", "error.journal")
+                    .set("javato.activetesting.trials.file", "error.trials")
+                    .set("javato.activetesting.schedule.record", "error.schedule")
+                    .set(CBP_STAT_PROPERTY, "cbp.stat");
+        }
+        File root = new File(DIR);
+        root.mkdirs();
+        File trialsFile = new File(root, "trials.list").getAbsoluteFile();
+        Trial.writeAll(trialsFile.getPath(), trials);
+
+        final Campaign campaign = new Campaign(trials, trialsFile);
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        for (int i = 0; i < trials.size(); i++) {
+            final int index = i;
+            pool.execute(new Runnable() {
+                public void run() {
+                    campaign.runTrial(index);
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        long millis = System.currentTimeMillis() - start;
+
+        System.out.println(trials.size() + " trials on " + workers + " workers: " + campaign.outcomes);
+        System.out.println("timer: " + (millis / 1000.0) + " sec");
+    }
+
+    private static String absolute(String file) {
+        return new File(file).getAbsolutePath();
+    }
+
+    private void runTrial(int index) {
+        Trial trial = trials.get(index);
+        File dir = new File(DIR, "trial" + index).getAbsoluteFile();
+        long start = System.currentTimeMillis();
+        String outcome;
+        try {
+            outcome = run(index, dir);
+        } catch (Exception e) {
+            e.printStackTrace();
+            outcome = TrialWorker.EXCEPTION;
+        }
+        long millis = System.currentTimeMillis() - start;
+        synchronized (this) {
+            Integer n = outcomes.get(outcome);
+            outcomes.put(outcome, n == null ? 1 : n + 1);
+            append(new File(dir, "error.stat"), Parameters.ERROR_STAT_FILE);
+            append(new File(dir, "error.stall"), Parameters.ERROR_STALL_FILE);
+            append(new File(dir, "cbp.stat"), System.getProperty(CBP_STAT_PROPERTY, "cbp.stat"));
+            String seed = trial.properties.get("javato.activetesting.seed");
+            TrialWorker.report(RESULTS_FILE, trial.label + " " + seed + " " + outcome + " " + millis);
+            System.out.println("Error:Iteration = " + trial.label + " seed " + seed + ": " + outcome
+                    + " in " + (millis / 1000.0) + " sec, see " + new File(dir, OUTPUT_FILE));
+        }
+    }
+
+    /**
+     * runs the trial with the given index in dir, and returns its outcome
+     */
+    private String run(int index, File dir) throws IOException, InterruptedException {
+        dir.mkdirs();
+        File[] stale = dir.listFiles();
+        if (stale != null) {
+            for (File f : stale) {
+                f.delete();
+            }
+        }
+        File report = new File(dir, REPORT_FILE);
+        Process worker = new ProcessBuilder(TrialRunner.workerCommand(trials, trialsFile.getPath(), index, 1, report.getPath()))
+                .directory(dir)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(dir, OUTPUT_FILE))
+                .start();
+        if (!worker.waitFor(timeout * 1000 + KILL_GRACE, TimeUnit.MILLISECONDS)) {
+            worker.destroyForcibly().waitFor();
+            return TrialWorker.TIMEOUT;
+        }
+        int status = worker.waitFor();
+
+        BufferedReader in;
+        try {
+            in = new BufferedReader(new FileReader(report));
+        } catch (IOException e) {
+            return TrialRunner.EXIT + status;
+        }
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(" ");
+                if (fields[0].equals("end")) {
+                    return fields[2];
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return TrialRunner.EXIT + status;
+    }
+
+    private static void append(File from, String to) {
+        if (!from.exists()) {
+            return;
+        }
+        try {
+            InputStream in = new FileInputStream(from);
+            OutputStream out = new FileOutputStream(to, true);
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+            out.close();
+            in.close();
+        } catch (IOException e) {
+            System.err.println("Error while appending " + from + " to " + to);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package javato.activetesting.trials;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * One run of the instrumented program: a label such as "3:1" for error 3 in
+ * iteration 1, and the system properties set for the run only, e.g.
+ * javato.activetesting.errorid.  Written as one line, the label followed by
+ * a tab and the properties as key=value separated by ';'.
+ */
+public class Trial {
+    public final String label;
+    public final Map<String, String> properties = new LinkedHashMap<String, String>();
+
+    public Trial(String label) {
+        this.label = label;
+    }
+
+    public Trial set(String key, String value) {
+        properties.put(key, value);
+        return this;
+    }
+
+    /**
+     * sets the properties of assignments, key=value separated by ';'
+     */
+    public Trial setAll(String assignments) {
+        for (String assignment : assignments.split(";")) {
+            int eq = assignment.indexOf('=');
+            if (eq > 0) {
+                set(assignment.substring(0, eq).trim(), assignment.substring(eq + 1).trim());
+            }
+        }
+        return this;
+    }
+
+    public static Trial parse(String line) {
+        int tab = line.indexOf('\t');
+        if (tab < 0) {
+            return new Trial(line);
+        }
+        return new Trial(line.substring(0, tab)).setAll(line.substring(tab + 1));
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder(label).append('\t');
+        String sep = "";
+        for (Map.Entry<String, String> e : properties.entrySet()) {
+            sb.append(sep).append(e.getKey()).append('=').append(e.getValue());
+            sep = ";";
+        }
+        return sb.toString();
+    }
+
+    public static List<Trial> readAll(String file) throws IOException {
+        List<Trial> ret = new ArrayList<Trial>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.length() > 0) {
+                    ret.add(parse(line));
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return ret;
+    }
+
+    public static void writeAll(String file, List<Trial> trials) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        for (Trial trial : trials) {
+            out.println(trial);
+        }
+        out.close();
+    }
+}
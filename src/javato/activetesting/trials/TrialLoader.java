@@ -1,6 +1,9 @@
-package javato.activetesting.scheduler;
+package javato.activetesting.trials;
 
-import javato.activetesting.activechecker.ActiveChecker;
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
 
 /**
  * Copyright (c) 2007-2008,
@@ -34,37 +37,27 @@ import javato.activetesting.activechecker.ActiveChecker;
  * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
-public class LivelockBreaker extends Thread {
-    private long waitTime;
-    private int breakCount = 0;
 
-    public LivelockBreaker(long waitTime) {
-        super("ipc2");
-        setDaemon(true);
-        this.waitTime = waitTime;
+/**
+ * Loads the instrumented program together with the analysis classes for
+ * one trial.  Only the JDK is shared with the JVM, so every trial starts
+ * with fresh statics in ObserverForActiveTesting, Observer, ActiveChecker,
+ * Parameters and the program itself.
+ */
+public class TrialLoader extends URLClassLoader {
+    public TrialLoader(URL[] classPath) {
+        super(classPath, ClassLoader.getSystemClassLoader().getParent());
     }
 
-    public void run() {
-        Object lock = new Object();
-        synchronized (lock) {
-            try {
-                while (true) {
-                    lock.wait(waitTime);
-                    if (!ActiveChecker.dirty.getAndSet(false)) {
-                        boolean flag = ActiveChecker.unblockAThread();
-                        if (flag) {
-                            breakCount++;
-                            if (breakCount%5==0) {
-                                ActiveChecker.reduceProbability();
-                            }
-                            //System.out.println("l");
-                        }
-                    }
-                }
-            } catch (InterruptedException e) {
-            }
+    /**
+     * returns the entries of java.class.path
+     */
+    public static URL[] classPath() throws MalformedURLException {
+        String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+        URL[] ret = new URL[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            ret[i] = new File(entries[i]).toURI().toURL();
         }
-
+        return ret;
     }
-
 }
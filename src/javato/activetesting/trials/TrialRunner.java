@@ -0,0 +1,175 @@
+package javato.activetesting.trials;
+
+import javato.activetesting.common.Parameters;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * Runs the trials of active-loop without a JVM per trial: the trials are
+ * handed to a TrialWorker, which runs them in its own JVM with a fresh
+ * class loader each, and a new worker takes over the remaining trials
+ * whenever a trial halts, exits, deadlocks or times out.  If instrumented
+ * JDK classes are on the boot class path (tmpbootclasses), the analysis
+ * cannot be reloaded and every trial gets a worker of its own.
+ * <p/>
+ * The trials are read from the system properties
+ * javato.activetesting.errorlist (comma separated error ids),
+ * javato.activetesting.trialnum.list and, optionally,
+ * javato.activetesting.trial.variants: '|' separated sets of extra
+ * properties, key=value separated by ';', each error is run with in every
+ * iteration.  For instance "|javato.race.resolve.order=true" runs every
+ * error twice, as predictest-loop does.  The worker JVMs get the JVM
+ * arguments and class path of this JVM.
+ * <p/>
+ * The outcome of every trial (ok, exception, timeout, deadlock, or exit:
+ * followed by the exit status of a trial that halted or exited) is
+ * appended to TRIALS_FILE as "label outcome millis".
+ */
+public class TrialRunner {
+    public static final String EXIT = "exit:";
+
+    public static List<Trial> trials(String errorList, String trialNumList, String variants) {
+        List<Trial> ret = new ArrayList<Trial>();
+        for (String trialNum : trialNumList.split(",")) {
+            if (trialNum.trim().length() == 0) continue;
+            for (String errorId : errorList.split(",")) {
+                if (errorId.trim().length() == 0) continue;
+                for (String variant : variants.split("\\|", -1)) {
+                    ret.add(new Trial(errorId.trim() + ":" + trialNum.trim())
+                            .set("javato.activetesting.errorid", errorId.trim())
+                            .setAll(variant));
+                }
+            }
+        }
+        return ret;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Trial> trials = trials(System.getProperty("javato.activetesting.errorlist", ""),
+                System.getProperty("javato.activetesting.trialnum.list", "1"),
+                System.getProperty("javato.activetesting.trial.variants", ""));
+        boolean isolate = new File("tmpbootclasses").exists();
+
+        File trialsFile = File.createTempFile("trials", ".list");
+        File reportFile = File.createTempFile("trials", ".report");
+        trialsFile.deleteOnExit();
+        reportFile.deleteOnExit();
+        Trial.writeAll(trialsFile.getPath(), trials);
+
+        int next = 0;
+        while (next < trials.size()) {
+            int count = isolate ? 1 : trials.size() - next;
+            new FileWriter(reportFile).close();
+            int status = runWorker(trials, trialsFile.getPath(), next, count, reportFile.getPath());
+            next = record(trials, next, reportFile.getPath(), status);
+        }
+    }
+
+    private static int runWorker(List<Trial> trials, String trialsFile, int first, int count, String reportFile)
+            throws IOException, InterruptedException {
+        return new ProcessBuilder(workerCommand(trials, trialsFile, first, count, reportFile))
+                .inheritIO().start().waitFor();
+    }
+
+    /**
+     * returns the command that runs a TrialWorker on the trials first to
+     * first+count-1 of trialsFile, with the JVM arguments and class path
+     * of this JVM
+     */
+    static List<String> workerCommand(List<Trial> trials, String trialsFile, int first, int count, String reportFile) {
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        if (count == 1) {
+            for (Map.Entry<String, String> e : trials.get(first).properties.entrySet()) {
+                command.add("-D" + e.getKey() + "=" + e.getValue());
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(TrialWorker.class.getName());
+        command.add(trialsFile);
+        command.add(Integer.toString(first));
+        command.add(Integer.toString(count));
+        command.add(reportFile);
+        return command;
+    }
+
+    /**
+     * appends the outcomes of the trials a worker started at first to
+     * TRIALS_FILE, and returns the index of the first trial it did not run
+     */
+    private static int record(List<Trial> trials, int first, String reportFile, int status) throws IOException {
+        int next = first;
+        long begun = -1;
+        BufferedReader in = new BufferedReader(new FileReader(reportFile));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(" ");
+                int i = Integer.parseInt(fields[1]);
+                if (fields[0].equals("begin")) {
+                    begun = Long.parseLong(fields[2]);
+                } else {
+                    TrialWorker.report(Parameters.TRIALS_FILE, trials.get(i).label + " " + fields[2] + " " + fields[3]);
+                    begun = -1;
+                }
+                next = i + 1;
+            }
+        } finally {
+            in.close();
+        }
+        if (begun >= 0) {
+            // the last trial begun halted or exited the worker
+            long millis = System.currentTimeMillis() - begun;
+            System.out.println("timer: " + (millis / 1000.0) + " sec");
+            TrialWorker.report(Parameters.TRIALS_FILE, trials.get(next - 1).label + " " + EXIT + status + " " + millis);
+        } else if (next == first) {
+            // the worker did not get to run a trial
+            TrialWorker.report(Parameters.TRIALS_FILE, trials.get(first).label + " " + EXIT + status + " 0");
+            next++;
+        }
+        return next;
+    }
+}
@@ -0,0 +1,304 @@
+package javato.activetesting.trials;
+
+import javato.activetesting.analysis.ShutdownHooks;
+import javato.activetesting.common.Parameters;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/**
+ * Runs trials one after another in this JVM.  Each trial loads the program
+ * and the analysis with a TrialLoader of its own and runs main in a thread
+ * group of its own.  A trial ends, as a JVM would, when no non-daemon
+ * thread of its group is left; the shutdown hooks of its analysis are then
+ * run and its remaining threads interrupted.
+ * <p/>
+ * A trial that deadlocks, times out, or leaves threads behind cannot be
+ * cleaned up, so the worker stops after it.  A trial that halts or exits
+ * stops the worker as well.  TrialRunner then goes on with a new worker.
+ * <p/>
+ * Usage: TrialWorker trialsFile first count reportFile
+ * <p/>
+ * runs the trials first to first+count-1 of trialsFile and appends
+ * "begin index startMillis" and "end index outcome millis" lines for each
+ * to reportFile.  A single trial is run with the class loader of the
+ * worker, as a plain JVM would run it, since the analysis may also be
+ * reachable from the boot class path; its properties must then be given
+ * to the worker JVM as well.
+ */
+public class TrialWorker {
+    public static final String OK = "ok";
+    public static final String EXCEPTION = "exception";
+    public static final String TIMEOUT = "timeout";
+    public static final String DEADLOCK = "deadlock";
+
+    private static final long POLL_INTERVAL = 10;
+    private static final long DEADLOCK_CHECK_INTERVAL = 500;
+    // milliseconds the analysis may take to finish, and the remaining threads to stop
+    private static final long HOOK_WAIT = 60000;
+    private static final long THREAD_WAIT = 1000;
+
+    private final String mainClass;
+    private final String[] args;
+    private final URL[] classPath;
+    private final long timeout;
+    private boolean reusable = true;
+
+    /**
+     * @param classPath the class path trials are loaded from, null to run
+     *                  a single trial with the class loader of this JVM
+     * @param timeout   milliseconds a trial may take, 0 for no limit
+     */
+    public TrialWorker(String mainClass, String[] args, URL[] classPath, long timeout) {
+        this.mainClass = mainClass;
+        this.args = args;
+        this.classPath = classPath;
+        this.timeout = timeout;
+    }
+
+    /**
+     * returns false iff a trial left something behind that later trials
+     * must not share this JVM with
+     */
+    public boolean isReusable() {
+        return reusable;
+    }
+
+    /**
+     * runs trial with its properties set, and returns its outcome
+     */
+    public String run(Trial trial) throws Exception {
+        Map<String, String> saved = apply(trial.properties);
+        ClassLoader loader;
+        if (classPath == null) {
+            loader = ClassLoader.getSystemClassLoader();
+            // the statics of this trial stay
+            reusable = false;
+        } else {
+            loader = new TrialLoader(classPath);
+        }
+        ThreadGroup group = new ThreadGroup("trial " + trial.label);
+        try {
+            final Method main = Class.forName(mainClass, false, loader).getMethod("main", String[].class);
+            final boolean[] failed = new boolean[1];
+            Thread thread = new Thread(group, "main") {
+                public void run() {
+                    try {
+                        main.invoke(null, (Object) args);
+                    } catch (InvocationTargetException e) {
+                        failed[0] = true;
+                        System.err.print("Exception in thread \"main\" ");
+                        e.getCause().printStackTrace();
+                    } catch (Throwable e) {
+                        failed[0] = true;
+                        e.printStackTrace();
+                    }
+                }
+            };
+            thread.setContextClassLoader(loader);
+            thread.start();
+
+            String outcome = await(group);
+            if (outcome == null) {
+                outcome = failed[0] ? EXCEPTION : OK;
+            } else {
+                reusable = false;
+            }
+            Class<?> hooks = Class.forName(ShutdownHooks.class.getName(), true, loader);
+            if (!(Boolean) hooks.getMethod("runAll", long.class).invoke(null, HOOK_WAIT)) {
+                reusable = false;
+            }
+            if (!stop(group)) {
+                reusable = false;
+            }
+            return outcome;
+        } finally {
+            restore(saved);
+            if (reusable) {
+                ((TrialLoader) loader).close();
+            }
+        }
+    }
+
+    /**
+     * waits until no non-daemon thread of group is left and returns null,
+     * or returns TIMEOUT or DEADLOCK
+     */
+    private String await(ThreadGroup group) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        long nextDeadlockCheck = start + DEADLOCK_CHECK_INTERVAL;
+        while (true) {
+            Thread[] threads = threads(group);
+            boolean running = false;
+            for (Thread t : threads) {
+                if (!t.isDaemon() && t.isAlive()) {
+                    running = true;
+                }
+            }
+            if (!running) {
+                return null;
+            }
+            long now = System.currentTimeMillis();
+            if (timeout > 0 && now - start >= timeout) {
+                return TIMEOUT;
+            }
+            if (now >= nextDeadlockCheck) {
+                if (isDeadlocked(threads)) {
+                    return DEADLOCK;
+                }
+                nextDeadlockCheck = now + DEADLOCK_CHECK_INTERVAL;
+            }
+            Thread.sleep(POLL_INTERVAL);
+        }
+    }
+
+    private static boolean isDeadlocked(Thread[] threads) {
+        long[] ids = ManagementFactory.getThreadMXBean().findDeadlockedThreads();
+        if (ids != null) {
+            for (Thread t : threads) {
+                for (long id : ids) {
+                    if (t.getId() == id) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * interrupts the threads left in group, returns true iff they all end
+     */
+    private static boolean stop(ThreadGroup group) throws InterruptedException {
+        Thread[] threads = threads(group);
+        for (Thread t : threads) {
+            t.interrupt();
+        }
+        long deadline = System.currentTimeMillis() + THREAD_WAIT;
+        for (Thread t : threads) {
+            t.join(Math.max(1, deadline - System.currentTimeMillis()));
+            if (t.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Thread[] threads(ThreadGroup group) {
+        Thread[] threads = new Thread[group.activeCount() + 8];
+        int n;
+        while ((n = group.enumerate(threads, true)) == threads.length) {
+            threads = new Thread[2 * threads.length];
+        }
+        return Arrays.copyOf(threads, n);
+    }
+
+    private static Map<String, String> apply(Map<String, String> properties) {
+        Map<String, String> saved = new HashMap<String, String>();
+        for (Map.Entry<String, String> e : properties.entrySet()) {
+            saved.put(e.getKey(), System.getProperty(e.getKey()));
+            System.setProperty(e.getKey(), e.getValue());
+        }
+        return saved;
+    }
+
+    private static void restore(Map<String, String> saved) {
+        for (Map.Entry<String, String> e : saved.entrySet()) {
+            if (e.getValue() == null) {
+                System.clearProperty(e.getKey());
+            } else {
+                System.setProperty(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    static void report(String file, String line) {
+        try {
+            FileWriter out = new FileWriter(file, true);
+            out.write(line + "\n");
+            out.close();
+        } catch (IOException e) {
+            System.err.println("Error while writing to " + file);
+        }
+    }
+
+    static String[] split(String args) {
+        args = args.trim();
+        return args.length() == 0 ? new String[0] : args.split("\\s+");
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 4) {
+            System.err.println("Usage: TrialWorker trialsFile first count reportFile");
+            System.exit(1);
+        }
+        List<Trial> trials = Trial.readAll(args[0]);
+        int first = Integer.parseInt(args[1]);
+        int count = Integer.parseInt(args[2]);
+        String reportFile = args[3];
+        TrialWorker worker = new TrialWorker(System.getProperty("javato.app.main.class"),
+                split(System.getProperty("javato.app.args", "")),
+                count == 1 ? null : TrialLoader.classPath(), Parameters.trialTimeout * 1000);
+
+        for (int i = first; i < first + count && worker.isReusable(); i++) {
+            Trial trial = trials.get(i);
+            System.out.println("Error:Iteration = " + trial.label);
+            System.out.println("------------------");
+            long start = System.currentTimeMillis();
+            report(reportFile, "begin " + i + " " + start);
+            String outcome;
+            try {
+                outcome = worker.run(trial);
+            } catch (Exception e) {
+                e.printStackTrace();
+                outcome = EXCEPTION;
+            }
+            long millis = System.currentTimeMillis() - start;
+            System.out.println("timer: " + (millis / 1000.0) + " sec");
+            report(reportFile, "end " + i + " " + outcome + " " + millis);
+        }
+        System.out.flush();
+        System.exit(0);
+    }
+}
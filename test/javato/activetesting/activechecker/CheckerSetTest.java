@@ -1,5 +1,14 @@
 package javato.activetesting.activechecker;
 
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 /**
  * Copyright (c) 2007-2008,
  * Koushik Sen    <ksen@cs.berkeley.edu>
@@ -32,44 +41,31 @@ package javato.activetesting.activechecker;
  * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
-public class Semaphore {
-    public int counter;
-    public int waitTime;
-
-    public Semaphore() {
-        this(0);
-        waitTime = 0;
-    }
 
-    public Semaphore(int i) {
-        if (i < 0) throw new IllegalArgumentException(i + " < 0");
-        counter = i;
-    }
+public class CheckerSetTest {
 
-    public synchronized void release(int waitTime) {
-        counter++;
-        this.waitTime = waitTime;
-        this.notify();
-    }
+    @Test
+    public void testRemoveKeepsTheOthersReachable() {
+        CheckerSet set = new CheckerSet();
+        ActiveChecker a = new ActiveChecker(), b = new ActiveChecker(), c = new ActiveChecker();
+        assertTrue(set.add(a));
+        assertTrue(set.add(b));
+        assertTrue(set.add(c));
+        assertFalse(set.add(b));
 
-    public synchronized void acquire() throws InterruptedException {
-        while (counter <= 0) {
-            //System.out.println("waiting in acqure, count:  " + this.counter);
-            this.wait();
-            //throw new InterruptedException();
-        }
-        counter--;
-        if (waitTime > 0) {
-            try {
-                Thread.sleep(waitTime);
-            } catch (InterruptedException e) {
-                e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-            }
+        assertTrue(set.remove(a));
+        assertFalse(set.remove(a));
+        assertEquals(2, set.size());
+        Set<ActiveChecker> left = new HashSet<ActiveChecker>();
+        for (int i = 0; i < set.size(); i++) {
+            left.add(set.get(i));
         }
-    }
+        assertTrue(left.contains(b) && left.contains(c));
 
-    public synchronized void decrement(int i) {
-        counter = counter - i;
+        assertTrue(set.remove(c));
+        assertTrue(set.remove(b));
+        assertEquals(0, set.size());
+        assertTrue(set.add(a));
+        assertEquals(a, set.iterator().next());
     }
 }
-
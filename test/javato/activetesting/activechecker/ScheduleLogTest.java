@@ -0,0 +1,96 @@
+package javato.activetesting.activechecker;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class ScheduleLogTest {
+
+    private static File record(String... lines) throws IOException {
+        File f = File.createTempFile("error", ".schedule");
+        f.deleteOnExit();
+        ScheduleLog log = new ScheduleLog(f.getPath(), null);
+        for (String line : lines) {
+            String[] fields = line.split(" ");
+            log.record(fields[0], Integer.parseInt(fields[1]), fields[2].charAt(0),
+                    Integer.parseInt(fields[3]), fields.length > 4 ? fields[4] : null);
+        }
+        log.flush();
+        return f;
+    }
+
+    @Test
+    public void testReplaysRecordedDecisionsInOrder() throws IOException {
+        File f = record("main 1 P 7", "main.0 1 R 8 main", "main.0 2 C 9 1", "main 1 B 7");
+        ScheduleLog log = new ScheduleLog(null, f.getPath());
+
+        assertTrue(log.isReplaying());
+        assertNull(log.take("main.0", 1, ScheduleLog.RELEASE));
+        assertNotNull(log.take("main", 1, ScheduleLog.PAUSE));
+        ScheduleLog.Entry e = log.take("main.0", 1, ScheduleLog.RELEASE);
+        assertEquals("main", e.arg);
+        assertEquals("main.0 2 C 9 1", log.peek().toString());
+        log.skip();
+        assertTrue(log.peek().is("main", 1, ScheduleLog.BREAK));
+        log.skip();
+        assertFalse(log.isReplaying());
+        assertNull(log.peek());
+    }
+
+    @Test
+    public void testDivergenceStopsReplay() throws IOException {
+        ScheduleLog log = new ScheduleLog(null, record("main 1 N 7", "main 2 P 7").getPath());
+
+        log.diverge("test");
+        assertFalse(log.isReplaying());
+        assertNull(log.take("main", 1, ScheduleLog.SKIP));
+    }
+
+    @Test
+    public void testLateCheckDiverges() throws Exception {
+        Object lock = new Object();
+        ScheduleLog log = new ScheduleLog(null, record("main 1 N 7", "main.0 1 N 8", "main 2 N 7").getPath());
+
+        synchronized (lock) {
+            log.awaitTurn(lock, "main", 1, 1000);
+            assertTrue(log.isReplaying());
+            log.awaitTurn(lock, "main", 2, 10);
+            assertFalse(log.isReplaying());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package javato.activetesting.common;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class ConfirmedTargetsTest {
+
+    @Test
+    public void testPendingSkipsConfirmedOfSameKind() throws IOException {
+        File f = File.createTempFile("error", ".stat");
+        f.deleteOnExit();
+        f.delete();
+
+        assertEquals(Arrays.asList(3, 1, 2), ConfirmedTargets.pending("3, 1,2,3,", f.getPath(), ConfirmedTargets.RACE));
+
+        ConfirmedTargets.append(f.getPath(), ConfirmedTargets.RACE, Arrays.asList(1));
+        ConfirmedTargets.append(f.getPath(), ConfirmedTargets.DEADLOCK, Arrays.asList(2));
+
+        assertEquals(Arrays.asList(3, 2), ConfirmedTargets.pending("3,1,2", f.getPath(), ConfirmedTargets.RACE));
+        assertEquals(Arrays.asList(3, 1), ConfirmedTargets.pending("3,1,2", f.getPath(), ConfirmedTargets.DEADLOCK));
+    }
+
+    @Test
+    public void testLeastTriedTakesTurnsAmongPending() throws IOException {
+        File f = File.createTempFile("error", ".stat");
+        f.deleteOnExit();
+        f.delete();
+
+        List<Integer> pending = Arrays.asList(3, 1, 2);
+        assertEquals(3, ConfirmedTargets.leastTried(pending, f.getPath(), ConfirmedTargets.RACE));
+        ConfirmedTargets.markTried(f.getPath(), ConfirmedTargets.RACE, 3);
+        assertEquals(1, ConfirmedTargets.leastTried(pending, f.getPath(), ConfirmedTargets.RACE));
+        ConfirmedTargets.markTried(f.getPath(), ConfirmedTargets.RACE, 1);
+        ConfirmedTargets.markTried(f.getPath(), ConfirmedTargets.RACE, 2);
+        assertEquals(3, ConfirmedTargets.leastTried(pending, f.getPath(), ConfirmedTargets.RACE));
+
+        // tries are not confirmations
+        assertEquals(pending, ConfirmedTargets.pending("3,1,2", f.getPath(), ConfirmedTargets.RACE));
+        assertEquals(-1, ConfirmedTargets.leastTried(new ArrayList<Integer>(), f.getPath(), ConfirmedTargets.RACE));
+    }
+}
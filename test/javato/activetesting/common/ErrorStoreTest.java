@@ -0,0 +1,91 @@
+package javato.activetesting.common;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class ErrorStoreTest {
+
+    private File newStoreFile() throws IOException {
+        File f = File.createTempFile("error", ".log");
+        f.deleteOnExit();
+        return f;
+    }
+
+    @Test
+    public void testReadByIndex() throws IOException, ClassNotFoundException {
+        File f = newStoreFile();
+        List<String> entries = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            entries.add("error" + i);
+        }
+        ErrorStore.write(f.getPath(), entries);
+
+        assertTrue(ErrorStore.isErrorStore(f.getPath()));
+        assertEquals(50, ErrorStore.size(f.getPath()));
+        assertEquals("error0", ErrorStore.read(f.getPath(), 0));
+        assertEquals("error37", ErrorStore.read(f.getPath(), 37));
+        assertEquals("error49", ErrorStore.read(f.getPath(), 49));
+        List<Serializable> all = ErrorStore.readAll(f.getPath());
+        assertEquals(entries, all);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testReadOutOfRange() throws IOException, ClassNotFoundException {
+        File f = newStoreFile();
+        List<String> entries = new ArrayList<String>();
+        entries.add("only");
+        ErrorStore.write(f.getPath(), entries);
+        ErrorStore.read(f.getPath(), 1);
+    }
+
+    @Test
+    public void testLegacyFileIsNotAStore() throws IOException {
+        File f = newStoreFile();
+        ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(f));
+        out.writeObject(new ArrayList<String>());
+        out.close();
+        assertFalse(ErrorStore.isErrorStore(f.getPath()));
+        assertFalse(ErrorStore.isErrorStore(f.getPath() + ".missing"));
+    }
+}
@@ -0,0 +1,96 @@
+package javato.activetesting.common;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class FindingsJournalTest {
+
+    private File newJournalFile() throws IOException {
+        File f = File.createTempFile("findings", ".journal");
+        f.deleteOnExit();
+        return f;
+    }
+
+    @Test
+    public void testRecoverInOrderAndByKind() throws IOException {
+        File f = newJournalFile();
+        FindingsJournal journal = new FindingsJournal(f.getPath());
+        for (int i = 0; i < 10; i++) {
+            journal.append(FindingsJournal.RACE, i, null);
+        }
+        journal.append(FindingsJournal.DEADLOCK, "cycle", null);
+        journal.close();
+
+        List<Serializable> races = FindingsJournal.recover(f.getPath(), FindingsJournal.RACE);
+        assertEquals(10, races.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, races.get(i));
+        }
+        List<Serializable> cycles = FindingsJournal.recover(f.getPath(), FindingsJournal.DEADLOCK);
+        assertEquals(1, cycles.size());
+        assertEquals("cycle", cycles.get(0));
+    }
+
+    @Test
+    public void testTornLastFrameIsDropped() throws IOException {
+        File f = newJournalFile();
+        FindingsJournal journal = new FindingsJournal(f.getPath());
+        journal.append(FindingsJournal.RACE, "first", null);
+        journal.append(FindingsJournal.RACE, "second", null);
+        journal.close();
+
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.setLength(raf.length() - 5);
+        raf.close();
+
+        List<Serializable> races = FindingsJournal.recover(f.getPath(), FindingsJournal.RACE);
+        assertEquals(1, races.size());
+        assertEquals("first", races.get(0));
+    }
+
+    @Test
+    public void testMissingJournal() {
+        assertTrue(FindingsJournal.recover("no/such/file.journal", FindingsJournal.RACE).isEmpty());
+        assertTrue(!FindingsJournal.isNewerThan("no/such/file.journal", "error.log"));
+    }
+}
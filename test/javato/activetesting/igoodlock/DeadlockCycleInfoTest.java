@@ -0,0 +1,73 @@
+package javato.activetesting.igoodlock;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class DeadlockCycleInfoTest {
+
+    private void addCycle(DeadlockCycleInfo info, Integer[]... contexts) {
+        info.addACycle();
+        for (Integer[] context : contexts) {
+            info.addANode(new Node(Arrays.asList(context)));
+        }
+    }
+
+    @Test
+    public void testRankByContext() {
+        DeadlockCycleInfo info = new DeadlockCycleInfo(5);
+        addCycle(info, new Integer[]{5, 6}, new Integer[]{7, 8});
+        addCycle(info, new Integer[]{1, 2}, new Integer[]{3, 4});
+        addCycle(info, new Integer[]{3, 4}, new Integer[]{1, 2});
+        addCycle(info, new Integer[]{1, 2}, new Integer[]{3, 4});
+        addCycle(info, new Integer[]{9, 10}, new Integer[]{11, 12});
+
+        DeadlockCycleInfo ranked = info.rankByContext();
+        assertEquals(3, ranked.getCycles().size());
+        assertEquals("[[1, 2], [3, 4]]", ranked.getCycles().get(0).toString());
+        assertEquals("[[5, 6], [7, 8]]", ranked.getCycles().get(1).toString());
+        assertEquals("[[9, 10], [11, 12]]", ranked.getCycles().get(2).toString());
+    }
+
+    @Test
+    public void testDifferentContextsAreKept() {
+        DeadlockCycleInfo info = new DeadlockCycleInfo(2);
+        addCycle(info, new Integer[]{1, 2}, new Integer[]{3, 4});
+        addCycle(info, new Integer[]{1}, new Integer[]{2, 3, 4});
+        assertEquals(2, info.rankByContext().getCycles().size());
+    }
+}
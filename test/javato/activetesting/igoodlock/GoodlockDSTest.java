@@ -0,0 +1,145 @@
+package javato.activetesting.igoodlock;
+
+import javato.activetesting.vc.VectorClock;
+import javato.activetesting.vc.VectorClockTracker;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class GoodlockDSTest {
+
+    @Test
+    public void testTwoThreadCycle() {
+        GoodlockDS gl = new GoodlockDS(1, false);
+        gl.lock(1, 1, 100);
+        gl.lock(2, 1, 200);
+        gl.unlock(2, 1, 200);
+        gl.unlock(1, 1, 100);
+        gl.lock(3, 2, 200);
+        gl.lock(4, 2, 100);
+        gl.unlock(4, 2, 100);
+        gl.unlock(3, 2, 200);
+
+        DeadlockCycleInfo cycles = gl.getDeadlockCycleInfo();
+        assertEquals(1, cycles.getCycles().size());
+        assertEquals("[[1, 2], [3, 4]]", cycles.getCycles().get(0).toString());
+    }
+
+    @Test
+    public void testCycleOrderedByStartIsInfeasible() {
+        // thread 1 takes 100 then 200 and only then starts thread 2,
+        // which takes 200 then 100
+        VectorClockTracker vcs = new VectorClockTracker();
+        vcs.getVectorClock(1).inc(1);
+        GoodlockDS gl = new GoodlockDS(1, false);
+        gl.lock(1, 1, 100, vcs.getVectorClock(1));
+        gl.lock(2, 1, 200, vcs.getVectorClock(1));
+        gl.unlock(2, 1, 200);
+        gl.unlock(1, 1, 100);
+        vcs.startBefore(1, 2);
+        gl.lock(3, 2, 200, vcs.getVectorClock(2));
+        gl.lock(4, 2, 100, vcs.getVectorClock(2));
+        gl.unlock(4, 2, 100);
+        gl.unlock(3, 2, 200);
+
+        assertEquals(1, gl.getDeadlockCycleInfo().getCycles().size());
+        assertEquals(0, gl.getFeasibleDeadlockCycleInfo().getCycles().size());
+
+        // once thread 1 repeats the nesting after the start, the cycle can happen
+        gl.lock(1, 1, 100, vcs.getVectorClock(1));
+        gl.lock(2, 1, 200, vcs.getVectorClock(1));
+        assertEquals(1, gl.getFeasibleDeadlockCycleInfo().getCycles().size());
+    }
+
+    @Test
+    public void testParallelSearchIsDeterministic() {
+        for (long seed = 0; seed < 4; seed++) {
+            String sequential = search(seed, 1);
+            assertEquals(sequential, search(seed, 4));
+            assertEquals(sequential, search(seed, 4));
+        }
+    }
+
+    @Test
+    public void testOnlineModeFindsTheSameCycles() {
+        for (long seed = 0; seed < 8; seed++) {
+            List<String> offline = sortedCycles(run(seed, 1, false));
+            List<String> online = sortedCycles(run(seed, 1, true));
+            assertEquals(offline, online);
+        }
+    }
+
+    private List<String> sortedCycles(GoodlockDS gl) {
+        List<String> ret = new ArrayList<String>();
+        for (List<Node> cycle : gl.getDeadlockCycleInfo().getCycles()) {
+            ret.add(cycle.toString());
+        }
+        Collections.sort(ret);
+        return ret;
+    }
+
+    private String search(long seed, int parallelism) {
+        return run(seed, parallelism, false).getDeadlockCycleInfo().getCycles().toString();
+    }
+
+    private GoodlockDS run(long seed, int parallelism, boolean online) {
+        GoodlockDS gl = new GoodlockDS(parallelism, online);
+        Random r = new Random(seed);
+        for (int step = 0; step < 40; step++) {
+            int thread = r.nextInt(4);
+            LinkedList<Integer> held = new LinkedList<Integer>();
+            LinkedList<Integer> iids = new LinkedList<Integer>();
+            int depth = 1 + r.nextInt(3);
+            for (int d = 0; d < depth; d++) {
+                int lock = r.nextInt(5);
+                if (held.contains(lock)) continue;
+                int iid = lock * 10 + r.nextInt(3);
+                gl.lock(iid, thread, lock);
+                held.addFirst(lock);
+                iids.addFirst(iid);
+            }
+            while (!held.isEmpty()) {
+                gl.unlock(iids.removeFirst(), thread, held.removeFirst());
+            }
+        }
+        return gl;
+    }
+}
@@ -0,0 +1,79 @@
+package javato.activetesting.lockset;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class LockContextIndexTest {
+
+    @Test
+    public void testLookupFollowsPushAndPop() {
+        LockContextIndex index = new LockContextIndex();
+        assertEquals(0, index.putIfAbsent(Arrays.asList(1, 2), 0));
+        assertEquals(1, index.putIfAbsent(Arrays.asList(2, 1), 1));
+        assertEquals(0, index.putIfAbsent(Arrays.asList(1, 2), 5));
+
+        LockContext ctx = new LockContext();
+        ctx.push(1);
+        assertEquals(-1, index.get(ctx));
+        ctx.push(2);
+        assertEquals(0, index.get(ctx));
+        ctx.pop();
+        ctx.pop();
+        ctx.push(2);
+        ctx.push(1);
+        assertEquals(1, index.get(ctx));
+        ctx.push(3);
+        assertEquals(-1, index.get(ctx));
+    }
+
+    @Test
+    public void testManyContextsSurviveRehash() {
+        LockContextIndex index = new LockContextIndex();
+        for (int i = 0; i < 100; i++) {
+            index.putIfAbsent(Arrays.asList(i, i + 1, i + 2), i);
+        }
+        for (int i = 0; i < 100; i++) {
+            LockContext ctx = new LockContext();
+            ctx.push(i);
+            ctx.push(i + 1);
+            ctx.push(i + 2);
+            assertEquals(i, index.get(ctx));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package javato.activetesting.lockset;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class LockSetTrackerTest {
+
+    @Test
+    public void testThreeThreadCycleIsDetected() {
+        LockSetTracker tracker = new LockSetTracker();
+        assertFalse(tracker.lockBefore(1, 1, 10));
+        assertFalse(tracker.lockBefore(2, 2, 20));
+        assertFalse(tracker.lockBefore(3, 3, 30));
+        assertFalse(tracker.lockBefore(4, 1, 20));
+        assertFalse(tracker.lockBefore(5, 2, 30));
+        assertTrue(tracker.lockBefore(6, 3, 10));
+    }
+
+    @Test
+    public void testReleasedLockBreaksChain() {
+        LockSetTracker tracker = new LockSetTracker();
+        assertFalse(tracker.lockBefore(1, 1, 10));
+        assertFalse(tracker.lockBefore(2, 2, 20));
+        // thread 2 waits for 10 and gets it once thread 1 releases it
+        assertFalse(tracker.lockBefore(3, 2, 10));
+        tracker.unlockAfter(1);
+        assertFalse(tracker.lockBefore(4, 1, 20));
+        tracker.unlockAfter(2);
+        tracker.unlockAfter(2);
+        assertFalse(tracker.lockBefore(5, 1, 10));
+    }
+
+    @Test
+    public void testReentrantAcquireIsNotADeadlock() {
+        LockSetTracker tracker = new LockSetTracker();
+        assertFalse(tracker.lockBefore(1, 1, 10));
+        assertFalse(tracker.lockBefore(2, 1, 10));
+        tracker.unlockAfter(1);
+        assertFalse(tracker.lockBefore(3, 2, 10));
+    }
+
+    @Test
+    public void testThreadPausedBeforeEnteringFreeLockWaitsForIt() {
+        LockSetTracker tracker = new LockSetTracker();
+        // thread 1 holds 10 and is paused before it really enters 20
+        assertFalse(tracker.lockBefore(1, 1, 10));
+        assertFalse(tracker.lockBefore(2, 1, 20));
+        // thread 2 enters 20 first, then requests 10
+        assertFalse(tracker.lockBefore(3, 2, 20));
+        assertTrue(tracker.lockBefore(4, 2, 10));
+    }
+}
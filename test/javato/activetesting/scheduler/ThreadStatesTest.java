@@ -0,0 +1,155 @@
+package javato.activetesting.scheduler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class ThreadStatesTest {
+
+    private static final int LOCK = 12345;
+
+    @Test
+    public void testBlockedUntilOwnerLeaves() throws InterruptedException {
+        ThreadStates.enable();
+        ThreadStates.lockBefore(LOCK);
+        int runnable = ThreadStates.getRunnableCount();
+        int live = ThreadStates.getLiveCount();
+
+        Thread other = new Thread() {
+            public void run() {
+                ThreadStates.lockBefore(LOCK);
+            }
+        };
+        ThreadStates.startBefore(other);
+        assertEquals(runnable + 1, ThreadStates.getRunnableCount());
+        assertEquals(live + 1, ThreadStates.getLiveCount());
+        other.start();
+        other.join();
+        // the other thread reported that it waits for LOCK
+        assertEquals(runnable, ThreadStates.getRunnableCount());
+        assertFalse(ThreadStates.isStalled());
+
+        ThreadStates.unlockAfter(LOCK);
+        assertEquals(runnable + 1, ThreadStates.getRunnableCount());
+        ThreadStates.joinAfter(other);
+        assertEquals(runnable, ThreadStates.getRunnableCount());
+        assertEquals(live, ThreadStates.getLiveCount());
+    }
+
+    private ThreadStates.State pausedState;
+
+    /**
+     * starts a thread that takes lockId, if not 0, and is then paused
+     */
+    private Thread startPaused(final int lockId) throws InterruptedException {
+        Thread other = new Thread() {
+            public void run() {
+                if (lockId != 0) {
+                    ThreadStates.lockBefore(lockId);
+                }
+                pausedState = ThreadStates.pause();
+            }
+        };
+        ThreadStates.startBefore(other);
+        other.start();
+        other.join();
+        return other;
+    }
+
+    @Test
+    public void testBlockedOnPausedOwnerIsStall() throws InterruptedException {
+        ThreadStates.enable();
+        int paused = ThreadStates.getPausedCount();
+        Thread other = startPaused(LOCK + 1);
+        assertEquals(paused + 1, ThreadStates.getPausedCount());
+        assertFalse(ThreadStates.isStalled());
+
+        ThreadStates.lockBefore(LOCK + 1);
+        assertTrue(ThreadStates.isStalled());
+
+        ThreadStates.resume(pausedState);
+        assertEquals(paused, ThreadStates.getPausedCount());
+        assertFalse(ThreadStates.isStalled());
+        ThreadStates.unlockAfter(LOCK + 1);
+        ThreadStates.joinAfter(other);
+    }
+
+    @Test
+    public void testWaitingThreadMayStillRun() throws InterruptedException {
+        ThreadStates.enable();
+        Thread other = startPaused(0);
+        ThreadStates.lockBefore(LOCK + 2);
+        int runnable = ThreadStates.getRunnableCount();
+
+        // the wait may be timed, or notified at once
+        ThreadStates.waitBefore(LOCK + 2);
+        assertEquals(runnable - 1, ThreadStates.getRunnableCount());
+        assertFalse(ThreadStates.isStalled());
+
+        ThreadStates.waitAfter(LOCK + 2);
+        assertEquals(runnable, ThreadStates.getRunnableCount());
+        ThreadStates.unlockAfter(LOCK + 2);
+        ThreadStates.resume(pausedState);
+        ThreadStates.joinAfter(other);
+    }
+
+    @Test
+    public void testThreadEndingBlockedIsNotWokenUp() throws InterruptedException {
+        ThreadStates.enable();
+        ThreadStates.lockBefore(LOCK + 3);
+        int runnable = ThreadStates.getRunnableCount();
+        int live = ThreadStates.getLiveCount();
+
+        // the other thread ends while the events still have it blocked
+        Thread other = new Thread() {
+            public void run() {
+                ThreadStates.lockBefore(LOCK + 3);
+            }
+        };
+        ThreadStates.startBefore(other);
+        other.start();
+        other.join();
+        ThreadStates.joinAfter(other);
+        assertEquals(runnable, ThreadStates.getRunnableCount());
+        assertEquals(live, ThreadStates.getLiveCount());
+
+        ThreadStates.unlockAfter(LOCK + 3);
+        assertEquals(runnable, ThreadStates.getRunnableCount());
+        assertEquals(live, ThreadStates.getLiveCount());
+    }
+}
@@ -0,0 +1,175 @@
+package javato.activetesting.syncpd;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class SyncPDStateTest {
+
+    private static final int MAIN = 100;
+
+    // same bookkeeping as SPDOnline.lockBefore and unlockAfter
+    private static void lock(SyncPDState state, int maxLength, int t, int l, int iid) {
+        state.addThread(t);
+        int vertexIndex = state.keepCycleBooks(t, l, iid);
+        if (vertexIndex >= 0) {
+            if (!state.findDeadlocks(vertexIndex, t, l, iid))
+                state.findLongDeadlocks(vertexIndex, t, l, iid, maxLength, 1000);
+        }
+        state.incClockThread(t);
+        state.addToLocksHeld(t, l);
+        state.addAcquireToHist(t, l, iid);
+    }
+
+    private static void unlock(SyncPDState state, int t, int l) {
+        state.incClockThread(t);
+        state.updateRelease(t, l);
+        state.removeLockFromLocksHeld(t, l);
+    }
+
+    // thread i takes lock i, then lock i+1 mod n, in sequence
+    private static SyncPDState ring(int n, int maxLength) {
+        return ring(new SyncPDState(), n, maxLength);
+    }
+
+    private static SyncPDState ring(SyncPDState state, int n, int maxLength) {
+        // main thread starts the workers, as in SPDOnline.startBefore
+        state.addThread(MAIN);
+        for (int t = 0; t < n; t++) {
+            state.incClockThread(MAIN);
+            state.addThread(MAIN, t);
+        }
+        for (int t = 0; t < n; t++) {
+            int outer = t, inner = (t + 1) % n;
+            lock(state, maxLength, t, outer, 2 * t);
+            lock(state, maxLength, t, inner, 2 * t + 1);
+            unlock(state, t, inner);
+            unlock(state, t, outer);
+        }
+        return state;
+    }
+
+    @Test
+    public void testThreeThreadCycleNeedsLongSearch() {
+        assertEquals(0, ring(3, 2).uniqueDeadlockCount);
+        assertEquals(1, ring(3, 3).uniqueDeadlockCount);
+    }
+
+    @Test
+    public void testCycleLengthIsBounded() {
+        assertEquals(0, ring(4, 3).uniqueDeadlockCount);
+        assertEquals(1, ring(4, 4).uniqueDeadlockCount);
+    }
+
+    @Test
+    public void testPairOrderedByWriteAndReadIsNotReported() {
+        SyncPDState state = new SyncPDState();
+        lock(state, 2, 0, 10, 0);
+        lock(state, 2, 0, 11, 1);
+        unlock(state, 0, 11);
+        unlock(state, 0, 10);
+        state.write(0, 7L);
+        state.read(1, 7L);
+        lock(state, 2, 1, 11, 2);
+        lock(state, 2, 1, 10, 3);
+        assertEquals(0, state.uniqueDeadlockCount);
+    }
+
+    @Test
+    public void testWriteAfterReadCarriesWhatTheWriterRead() {
+        SyncPDState state = new SyncPDState();
+        state.write(2, 8L);
+        state.write(0, 7L);
+        state.read(0, 8L);
+        state.write(0, 9L);
+        state.read(1, 7L);
+        assertEquals(0, state.getThreadVC(1).getClockIndex(state.getThreadId(2)));
+        state.read(1, 9L);
+        assertEquals(2, state.getThreadVC(1).getClockIndex(state.getThreadId(2)));
+        assertEquals(4, state.getThreadVC(1).getClockIndex(state.getThreadId(0)));
+    }
+
+    @Test
+    public void testPairIsStillFound() {
+        assertEquals(1, ring(2, 2).uniqueDeadlockCount);
+        assertEquals(1, ring(2, 4).uniqueDeadlockCount);
+    }
+
+    @Test
+    public void testCollectionKeepsConcurrentHistory() {
+        assertEquals(1, ring(new SyncPDState(1), 2, 2).uniqueDeadlockCount);
+        assertEquals(1, ring(new SyncPDState(1), 3, 3).uniqueDeadlockCount);
+    }
+
+    @Test
+    public void testCheckerThreadAppliesEventsInOrder() {
+        SyncPDState state = new SyncPDState();
+        SyncPDChecker checker = new SyncPDChecker(state, 3, 1000);
+        checker.start(MAIN, 0);
+        checker.start(MAIN, 1);
+        checker.start(MAIN, 2);
+        for (int t = 0; t < 3; t++) {
+            checker.acquire(2 * t, t, t);
+            checker.acquire(2 * t + 1, t, (t + 1) % 3);
+            checker.release(t, (t + 1) % 3);
+            checker.release(t, t);
+        }
+        checker.close();
+        assertEquals(1, state.uniqueDeadlockCount);
+    }
+
+    @Test
+    public void testCheckerKeepsUpWithMoreEventsThanItQueues() {
+        SyncPDState state = new SyncPDState();
+        SyncPDChecker checker = new SyncPDChecker(state, 2, 1000);
+        checker.start(MAIN, 0);
+        checker.start(MAIN, 1);
+        for (int k = 0; k < 2 * SyncPDChecker.CAPACITY; k++) {
+            checker.acquire(0, 0, 0);
+            checker.write(0, k);
+            checker.release(0, 0);
+            checker.read(1, k);
+        }
+        checker.acquire(1, 0, 0);
+        checker.acquire(2, 0, 1);
+        checker.release(0, 1);
+        checker.release(0, 0);
+        checker.acquire(3, 1, 1);
+        checker.acquire(4, 1, 0);
+        checker.close();
+        assertEquals(1, state.uniqueDeadlockCount);
+    }
+}
@@ -0,0 +1,82 @@
+package javato.activetesting.syncstate;
+
+import javato.activetesting.lockset.LockSet;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+public class SyncStateTest {
+
+    @Test
+    public void testReentrantLocksAreCountedOnce() {
+        SyncState s = new SyncStateTracker().get(1);
+        assertTrue(s.lockBefore(10, 5));
+        assertFalse(s.lockBefore(11, 5));
+        assertTrue(s.lockBefore(12, 6));
+        assertEquals(2, s.getDepth());
+        assertFalse(s.unlockAfter(5));
+        assertTrue(s.unlockAfter(5));
+        assertEquals(1, s.getDepth());
+        assertEquals(6, s.getLock(0));
+        assertEquals(12, s.getIid(0));
+    }
+
+    @Test
+    public void testLockSetIsSharedUntilLocksChange() {
+        SyncState s = new SyncStateTracker().get(1);
+        s.lockBefore(10, 5);
+        assertSame(s.getLockSet(), s.getLockSet());
+        LockSet before = s.getLockSet();
+        s.lockBefore(11, 5);
+        assertSame(before, s.getLockSet());
+        s.lockBefore(12, 6);
+        assertEquals(2, s.getLockSet().size());
+        assertEquals(1, before.size());
+    }
+
+    @Test
+    public void testStartedThreadSeesParentClock() {
+        SyncStateTracker tracker = new SyncStateTracker();
+        tracker.get(1).getVectorClock().inc(1);
+        tracker.startBefore(1, 2);
+        assertEquals(1, tracker.get(2).getVectorClock().getValue(1));
+        assertEquals(1, tracker.get(2).getVectorClock().getValue(2));
+        assertEquals(2, tracker.get(1).getVectorClock().getValue(1));
+    }
+}
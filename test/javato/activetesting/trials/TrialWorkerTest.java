@@ -0,0 +1,110 @@
+package javato.activetesting.trials;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class TrialWorkerTest {
+    private static final String RESULT = "javato.trials.test.result";
+    private static final String INPUT = "javato.trials.test.input";
+
+    public static class Counting {
+        static int runs = 0;
+
+        public static void main(String[] args) throws InterruptedException {
+            Thread child = new Thread() {
+                public void run() {
+                    runs++;
+                }
+            };
+            child.start();
+            runs++;
+            System.setProperty(RESULT, runs + System.getProperty(INPUT) + args[0]);
+        }
+    }
+
+    public static class Failing {
+        public static void main(String[] args) {
+            throw new IllegalStateException("expected by TrialWorkerTest");
+        }
+    }
+
+    public static class Sleeping {
+        public static void main(String[] args) throws InterruptedException {
+            Thread.sleep(60000);
+        }
+    }
+
+    @Test
+    public void testEveryTrialGetsFreshStatics() throws Exception {
+        TrialWorker worker = new TrialWorker(Counting.class.getName(), new String[]{"x"}, TrialLoader.classPath(), 0);
+        for (int i = 0; i < 3; i++) {
+            System.clearProperty(RESULT);
+            assertEquals(TrialWorker.OK, worker.run(new Trial("1:" + i).set(INPUT, "in" + i)));
+            // the child thread may or may not have counted before main reads runs
+            String result = System.getProperty(RESULT);
+            assertTrue(result, result.equals("1in" + i + "x") || result.equals("2in" + i + "x"));
+            assertNull(System.getProperty(INPUT));
+            assertTrue(worker.isReusable());
+        }
+        assertEquals(0, Counting.runs);
+    }
+
+    @Test
+    public void testExceptionInMain() throws Exception {
+        TrialWorker worker = new TrialWorker(Failing.class.getName(), new String[0], TrialLoader.classPath(), 0);
+        assertEquals(TrialWorker.EXCEPTION, worker.run(new Trial("1:1")));
+        assertTrue(worker.isReusable());
+    }
+
+    @Test
+    public void testTimeoutStopsWorker() throws Exception {
+        TrialWorker worker = new TrialWorker(Sleeping.class.getName(), new String[0], TrialLoader.classPath(), 100);
+        assertEquals(TrialWorker.TIMEOUT, worker.run(new Trial("1:1")));
+        assertFalse(worker.isReusable());
+    }
+
+    @Test
+    public void testTrialsOfEveryErrorAndVariant() {
+        List<Trial> trials = TrialRunner.trials("3,5", "1,2", "|javato.race.resolve.order=true");
+        assertEquals(8, trials.size());
+        assertEquals("3:1\tjavato.activetesting.errorid=3", trials.get(0).toString());
+        assertEquals("3:1\tjavato.activetesting.errorid=3;javato.race.resolve.order=true", trials.get(1).toString());
+        assertEquals("5:2", trials.get(7).label);
+        assertEquals("true", Trial.parse(trials.get(7).toString()).properties.get("javato.race.resolve.order"));
+    }
+}